@@ -0,0 +1,165 @@
+package Server;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 节点间链路：在同一主机或集群内的多个 Server 进程之间传递配对、路由与中继消息，不依赖外部消息中间件。
+ *
+ * 帧格式（大端）：[int 长度][byte 类型][负载]，负载由 DataOutputStream 写入（字符串用 writeUTF）。
+ * 每个节点向每个对端只维护一条出站连接用于发送，接收则来自对端的出站连接；
+ * 连接建立后的第一帧为 HELLO(nodeId)，用于识别对端。
+ */
+public final class ClusterLink {
+    // 帧类型
+    public static final byte HELLO = 0;
+    public static final byte JOIN = 1;    // home -> lobby：connId, name
+    public static final byte LEAVE = 2;   // home -> lobby：connId
+    public static final byte CREATE = 3;  // lobby -> owner：sessionId, 2 x (node, connId, name)
+    public static final byte BIND = 4;    // owner -> home：connId（此后该连接的消息上送到 owner）
+    public static final byte UP = 5;      // home -> owner：connId, line
+    public static final byte DOWN = 6;    // owner -> home：connId, line
+    public static final byte CLOSE = 7;   // owner -> home：connId
+    public static final byte GONE = 8;    // home -> owner：connId
+    public static final byte RESUME = 9;  // home -> owner：connId, name, resumeLine
+
+    /** 收到一帧时的回调，在该对端的读取线程上执行；抛出的 RuntimeException 只丢弃该帧。 */
+    public interface Handler {
+        void onFrame(String fromNode, byte type, DataInputStream in) throws IOException;
+    }
+
+    // 建立出站连接的超时
+    private static final int CONNECT_TIMEOUT_MILLIS = 3_000;
+
+    private final String selfId;
+    private final Map<String, InetSocketAddress> peers;
+    private final Handler handler;
+    private final ExecutorService exec;
+    private final Map<String, DataOutputStream> outbound = new ConcurrentHashMap<>();
+
+    public ClusterLink(String selfId, Map<String, InetSocketAddress> nodes, Handler handler, ExecutorService exec) {
+        this.selfId = selfId;
+        this.peers = nodes;
+        this.handler = handler;
+        this.exec = exec;
+    }
+
+    /** 在本节点的集群端口上接受对端连接。 */
+    public void listen() throws IOException {
+        ServerSocket ss = new ServerSocket(peers.get(selfId).getPort());
+        exec.submit(() -> acceptLoop(ss));
+    }
+
+    private void acceptLoop(ServerSocket ss) {
+        try {
+            while (true) {
+                Socket s = ss.accept();
+                s.setTcpNoDelay(true);
+                exec.submit(() -> readLoop(s));
+            }
+        } catch (IOException e) {
+            System.err.println("Cluster accept loop stopped: " + e.getMessage());
+        }
+    }
+
+    private void readLoop(Socket s) {
+        String from = "?";
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            while (true) {
+                int len = in.readInt();
+                byte[] buf = new byte[len];
+                in.readFully(buf);
+                DataInputStream frame = new DataInputStream(new ByteArrayInputStream(buf));
+                byte type = frame.readByte();
+                if (type == HELLO) {
+                    from = frame.readUTF();
+                    System.out.println("Cluster link up: " + from + " -> " + selfId);
+                } else {
+                    // 帧已整体读入，单帧处理失败不影响分帧；读取线程承载该对端的全部流量，不能因此退出
+                    try {
+                        handler.onFrame(from, type, frame);
+                    } catch (RuntimeException e) {
+                        System.err.println("Cluster frame " + type + " from " + from + " failed: " + e);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Cluster link from " + from + " closed: " + e.getMessage());
+        } finally {
+            try { s.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    /** 负载写入器：调用方在其中写入负载字段。 */
+    public interface Payload {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * 向 node 发送一帧。同一对端的发送串行化，保证帧按调用顺序到达；
+     * 连接失败时重连一次，仍失败则抛出 IOException。
+     */
+    public void send(String node, byte type, Payload payload) throws IOException {
+        ByteArrayOutputStream bytes = encode(type, payload);
+        for (int attempt = 0; ; attempt++) {
+            DataOutputStream out = connection(node);
+            try {
+                synchronized (out) {
+                    out.writeInt(bytes.size());
+                    bytes.writeTo(out);
+                    out.flush();
+                }
+                return;
+            } catch (IOException e) {
+                outbound.remove(node, out);
+                if (attempt >= 1) throw e;
+            }
+        }
+    }
+
+    private static ByteArrayOutputStream encode(byte type, Payload payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream body = new DataOutputStream(bytes);
+        body.writeByte(type);
+        payload.write(body);
+        body.flush();
+        return bytes;
+    }
+
+    /*
+     * 取得到 node 的出站连接，没有则新建。建连不持有任何全局锁：一个不可达的节点只会让发往它的调用等待
+     * （最多 CONNECT_TIMEOUT_MILLIS），不影响发往其他节点的帧。并发建连时以 putIfAbsent 先发布者为准，
+     * 落败的一方关闭自己的连接。
+     */
+    private DataOutputStream connection(String node) throws IOException {
+        DataOutputStream out = outbound.get(node);
+        if (out != null) return out;
+        InetSocketAddress addr = peers.get(node);
+        if (addr == null) throw new IOException("unknown node " + node);
+        Socket s = new Socket();
+        try {
+            s.connect(addr, CONNECT_TIMEOUT_MILLIS);
+            s.setTcpNoDelay(true);
+            out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            ByteArrayOutputStream hello = encode(HELLO, o -> o.writeUTF(selfId));
+            out.writeInt(hello.size());
+            hello.writeTo(out);
+            out.flush();
+        } catch (IOException e) {
+            try { s.close(); } catch (IOException ignored) {}
+            throw e;
+        }
+        DataOutputStream existing = outbound.putIfAbsent(node, out);
+        if (existing != null) {
+            try { s.close(); } catch (IOException ignored) {}
+            return existing;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,41 @@
+package Server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 一致性哈希环：为会话 ID（以及大厅 "lobby"）选出归属节点。
+ * 每个节点在环上放置 VNODES 个虚拟节点，使负载分布更均匀；节点增减时只有相邻区间的键会迁移。
+ */
+public final class HashRing {
+    private static final int VNODES = 64;
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+
+    public HashRing(Collection<String> nodeIds) {
+        for (String id : nodeIds) {
+            for (int v = 0; v < VNODES; v++) ring.put(hash(id + "#" + v), id);
+        }
+    }
+
+    /** 返回 key 的归属节点：环上顺时针方向的第一个虚拟节点。 */
+    public String owner(String key) {
+        Map.Entry<Long, String> e = ring.ceilingEntry(hash(key));
+        return (e != null ? e : ring.firstEntry()).getValue();
+    }
+
+    // 64 位 FNV-1a，再做一次混合以打散相近的字符串
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        return h;
+    }
+}
@@ -0,0 +1,90 @@
+package Server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁对数-线性直方图（与 HdrHistogram 的分桶方式类似）：每个 2 的幂区间再细分为 8 个子桶，相对误差约 12.5%。
+ * record 只对一个 LongAdder 做加法，适合放在中继热路径上；读取（导出、分位数）为近似快照。
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder sum = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) counts[i] = new LongAdder();
+    }
+
+    /** 记录一个非负取值（通常为纳秒）。 */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts[index(value)].increment();
+        sum.add(value);
+    }
+
+    static int index(long v) {
+        if (v < SUB) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB - 1);
+        return (exp - SUB_BITS + 1) * SUB + sub;
+    }
+
+    /** 桶 i 覆盖的最大取值（含）。 */
+    static long upperBound(int i) {
+        if (i < SUB) return i;
+        int exp = i / SUB + SUB_BITS - 1;
+        int sub = i % SUB;
+        long base = 1L << exp;
+        long width = 1L << (exp - SUB_BITS);
+        return base + (sub + 1) * width - 1;
+    }
+
+    public long count() {
+        long c = 0;
+        for (LongAdder a : counts) c += a.sum();
+        return c;
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    /** 近似分位数（q 取 0..1），返回所在桶的上界。 */
+    public long quantile(double q) {
+        long[] snap = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += (snap[i] = counts[i].sum());
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snap[i];
+            if (seen >= rank) return upperBound(i);
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    /**
+     * 以 Prometheus histogram 格式输出；只在 2 的幂边界上输出累计桶（取值以 scale 换算成秒），
+     * 范围为 [minExp, maxExp]。
+     */
+    public void writePrometheus(StringBuilder sb, String name, String labels, double scale, int minExp, int maxExp) {
+        long cumulative = 0;
+        int i = 0;
+        for (int exp = minExp; exp <= maxExp; exp++) {
+            long bound = (1L << (exp + 1)) - 1;
+            for (; i < BUCKETS && upperBound(i) <= bound; i++) cumulative += counts[i].sum();
+            sb.append(name).append("_bucket{").append(labels).append(labels.isEmpty() ? "" : ",")
+              .append("le=\"").append((bound + 1) * scale).append("\"} ").append(cumulative).append('\n');
+        }
+        long total = cumulative;
+        for (; i < BUCKETS; i++) total += counts[i].sum();
+        sb.append(name).append("_bucket{").append(labels).append(labels.isEmpty() ? "" : ",")
+          .append("le=\"+Inf\"} ").append(total).append('\n');
+        sb.append(name).append("_sum{").append(labels).append("} ").append(sum.sum() * scale).append('\n');
+        sb.append(name).append("_count{").append(labels).append("} ").append(total).append('\n');
+    }
+}
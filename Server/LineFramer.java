@@ -0,0 +1,114 @@
+package Server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 按换行字节切分输入流的分帧器，供中继热路径使用：不解码 UTF-8、不创建 String。
+ *
+ * next() 成功后，当前行位于 buf()[start() .. start()+length())，紧随其后的一个字节就是 '\n'，
+ * 因此转发时可以把 [start, start+length+1) 原样写给对方，连换行符一起，无需拷贝。
+ * 该区间只在下一次调用 next() 之前有效。
+ */
+public final class LineFramer {
+    private final InputStream in;
+    private final int maxLine;
+    private byte[] buf;
+    private int start, end, limit, scanFrom;
+
+    public LineFramer(InputStream in, int initialCapacity, int maxLine) {
+        this.in = in;
+        this.maxLine = maxLine;
+        this.buf = new byte[initialCapacity];
+    }
+
+    /** 读取下一行；流结束返回 false。行超过 maxLine 时抛出 IOException。 */
+    public boolean next() throws IOException {
+        // 丢弃上一行（含换行符）
+        start = end;
+        if (start < limit && buf[start] == '\n') start++;
+        scanFrom = Math.max(scanFrom, start);
+        while (true) {
+            for (int i = scanFrom; i < limit; i++) {
+                if (buf[i] == '\n') {
+                    end = i;
+                    scanFrom = i + 1;
+                    return true;
+                }
+            }
+            scanFrom = limit;
+            if (limit - start > maxLine) throw new IOException("line too long");
+            if (!fill()) return false;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (start > 0) {
+            // 把未完成的部分移到缓冲区开头
+            System.arraycopy(buf, start, buf, 0, limit - start);
+            limit -= start;
+            scanFrom -= start;
+            end -= start;
+            start = 0;
+        }
+        if (limit == buf.length) buf = Arrays.copyOf(buf, Math.min(buf.length * 2, maxLine + 1));
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n <= 0) return false;
+        limit += n;
+        return true;
+    }
+
+    public byte[] buf() { return buf; }
+
+    public int start() { return start; }
+
+    /** 当前行长度（不含 '\n'）。 */
+    public int length() { return end - start; }
+
+    /** 解码当前行（去掉行尾 '\r'）；只在握手、日志等非热路径使用。 */
+    public String decode() {
+        int len = length();
+        if (len > 0 && buf[start + len - 1] == '\r') len--;
+        return new String(buf, start, len, StandardCharsets.UTF_8);
+    }
+
+    // ---- 字节级的协议辅助 ----
+
+    public static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public static boolean startsWith(byte[] b, int off, int len, byte[] prefix) {
+        if (len < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (b[off + i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    /** 整行等于 word（允许行尾 '\r'）。 */
+    public static boolean equals(byte[] b, int off, int len, byte[] word) {
+        if (len > 0 && b[off + len - 1] == '\r') len--;
+        return len == word.length && startsWith(b, off, len, word);
+    }
+
+    /** 解析 [from, to) 内的十进制非负整数，遇到非数字即停止；没有数字时返回 -1。 */
+    public static int parseInt(byte[] b, int from, int to) {
+        int v = -1;
+        for (int i = from; i < to; i++) {
+            int d = b[i] - '0';
+            if (d < 0 || d > 9) break;
+            v = (v < 0 ? 0 : v * 10) + d;
+        }
+        return v;
+    }
+
+    public static int indexOf(byte[] b, int from, int to, byte c) {
+        for (int i = from; i < to; i++) {
+            if (b[i] == c) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,220 @@
+package Server;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.ObjectName;
+
+/**
+ * 服务器指标：计数器均为 LongAdder，延迟为无锁直方图，中继路径上不加锁。
+ * 通过内置 HTTP 端点（Prometheus 文本格式，/metrics）与 JMX 两种方式导出。
+ */
+public final class Metrics implements MetricsMXBean {
+    /** 按消息类型统计，下标与 TYPE_NAMES 对应。 */
+    public static final int MSG_MOVE = 0, MSG_CHAT = 1, MSG_UNDO = 2, MSG_RESET = 3, MSG_GAME_OVER = 4, MSG_PONG = 5, MSG_OTHER = 6;
+    private static final String[] TYPE_NAMES = {"move", "chat", "undo", "reset", "game_over", "pong", "other"};
+
+    private final String node;
+    final LongAdder activeConnections = new LongAdder();
+    final LongAdder connectionsTotal = new LongAdder();
+    final LongAdder activeSessions = new LongAdder();
+    final LongAdder sessionsTotal = new LongAdder();
+    final LongAdder bytesIn = new LongAdder();
+    final LongAdder bytesOut = new LongAdder();
+    final LongAdder handshakeFailures = new LongAdder();
+    final LongAdder turnTimeouts = new LongAdder();
+    final LongAdder idleReaped = new LongAdder();
+    final LongAdder chatRateLimited = new LongAdder();
+    final LongAdder chatTooLong = new LongAdder();
+    final LongAdder chatDropped = new LongAdder();
+    final LongAdder slowConsumers = new LongAdder();
+    final LongAdder tlsHandshakes = new LongAdder();
+    final LongAdder tlsHandshakeFailures = new LongAdder();
+    final LongAdder tlsHandshakeRejected = new LongAdder();
+    private final LongAdder[] messages = new LongAdder[TYPE_NAMES.length];
+    final LatencyHistogram relayLatency = new LatencyHistogram();
+    final LatencyHistogram handshakeTime = new LatencyHistogram();
+    final LatencyHistogram tlsHandshakeTime = new LatencyHistogram();
+    // 启用 TLS 时为握手池的排队数
+    volatile LongSupplier tlsQueueDepth;
+
+    private final LongSupplier waitingDepth;
+    private final ThreadPoolExecutor pool;
+    private final SessionStore store;
+
+    public Metrics(String node, LongSupplier waitingDepth, ThreadPoolExecutor pool, SessionStore store) {
+        this.node = node;
+        this.waitingDepth = waitingDepth;
+        this.pool = pool;
+        this.store = store;
+        for (int i = 0; i < messages.length; i++) messages[i] = new LongAdder();
+    }
+
+    private static final byte[][] PREFIXES = {
+        LineFramer.ascii("MOVE:"), LineFramer.ascii("CHAT:"), LineFramer.ascii("UNDO_"),
+        LineFramer.ascii("RESET"), LineFramer.ascii("GAME_OVER:"), LineFramer.ascii("PONG")
+    };
+
+    /** 只看前几个字节判断消息类型，不做完整解析（下标与 MSG_* 对应）。 */
+    public static int classify(byte[] b, int off, int len) {
+        for (int i = 0; i < PREFIXES.length; i++) {
+            if (LineFramer.startsWith(b, off, len, PREFIXES[i])) return i;
+        }
+        return MSG_OTHER;
+    }
+
+    public void message(int type) {
+        messages[type].increment();
+    }
+
+    /** 包装 socket 输入流，统计读入字节数。 */
+    public InputStream countIn(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) bytesIn.increment();
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len) throws IOException {
+                int n = super.read(buf, off, len);
+                if (n > 0) bytesIn.add(n);
+                return n;
+            }
+        };
+    }
+
+    /** 包装 socket 输出流，统计写出字节数。 */
+    public OutputStream countOut(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                bytesOut.increment();
+            }
+
+            @Override
+            public void write(byte[] buf, int off, int len) throws IOException {
+                out.write(buf, off, len);
+                bytesOut.add(len);
+            }
+        };
+    }
+
+    /** 在 port 上启动 /metrics HTTP 端点（单线程处理）。 */
+    public void startHttp(int port) throws IOException {
+        HttpServer http = HttpServer.create(new InetSocketAddress(port), 0);
+        http.createContext("/metrics", ex -> {
+            byte[] body = prometheus().getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            ex.sendResponseHeaders(200, body.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        http.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "metrics-http");
+            t.setDaemon(true);
+            return t;
+        }));
+        http.start();
+        System.out.println("Metrics endpoint: http://localhost:" + port + "/metrics");
+    }
+
+    /** 注册为 JMX MXBean：gomoku:type=Server,node=<node>。 */
+    public void registerJmx() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("gomoku:type=Server,node=" + node));
+        } catch (Exception e) {
+            System.err.println("JMX registration failed: " + e.getMessage());
+        }
+    }
+
+    public String prometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+        String l = "node=\"" + node + "\"";
+        gauge(sb, "gomoku_active_connections", l, activeConnections.sum());
+        counter(sb, "gomoku_connections_total", l, connectionsTotal.sum());
+        gauge(sb, "gomoku_waiting_players", l, waitingDepth.getAsLong());
+        gauge(sb, "gomoku_active_sessions", l, activeSessions.sum());
+        counter(sb, "gomoku_sessions_total", l, sessionsTotal.sum());
+        gauge(sb, "gomoku_session_slots_used", l, store.usedSlots());
+        gauge(sb, "gomoku_session_store_bytes", l, store.reservedBytes());
+        sb.append("# TYPE gomoku_messages_total counter\n");
+        for (int i = 0; i < messages.length; i++) {
+            sb.append("gomoku_messages_total{").append(l).append(",type=\"").append(TYPE_NAMES[i]).append("\"} ")
+              .append(messages[i].sum()).append('\n');
+        }
+        counter(sb, "gomoku_bytes_in_total", l, bytesIn.sum());
+        counter(sb, "gomoku_bytes_out_total", l, bytesOut.sum());
+        counter(sb, "gomoku_handshake_failures_total", l, handshakeFailures.sum());
+        counter(sb, "gomoku_turn_timeouts_total", l, turnTimeouts.sum());
+        counter(sb, "gomoku_idle_reaped_total", l, idleReaped.sum());
+        counter(sb, "gomoku_chat_rate_limited_total", l, chatRateLimited.sum());
+        counter(sb, "gomoku_chat_too_long_total", l, chatTooLong.sum());
+        counter(sb, "gomoku_chat_dropped_total", l, chatDropped.sum());
+        counter(sb, "gomoku_slow_consumer_disconnects_total", l, slowConsumers.sum());
+        sb.append("# TYPE gomoku_relay_latency_seconds histogram\n");
+        // 纳秒 -> 秒，约 1µs .. 1s
+        relayLatency.writePrometheus(sb, "gomoku_relay_latency_seconds", l, 1e-9, 9, 29);
+        sb.append("# TYPE gomoku_handshake_seconds histogram\n");
+        // 约 1ms .. 60s
+        handshakeTime.writePrometheus(sb, "gomoku_handshake_seconds", l, 1e-9, 19, 35);
+        LongSupplier tlsQueue = tlsQueueDepth;
+        if (tlsQueue != null) {
+            counter(sb, "gomoku_tls_handshakes_total", l, tlsHandshakes.sum());
+            counter(sb, "gomoku_tls_handshake_failures_total", l, tlsHandshakeFailures.sum());
+            counter(sb, "gomoku_tls_handshake_rejected_total", l, tlsHandshakeRejected.sum());
+            gauge(sb, "gomoku_tls_handshake_queue", l, tlsQueue.getAsLong());
+            sb.append("# TYPE gomoku_tls_handshake_seconds histogram\n");
+            // 约 16µs .. 16s
+            tlsHandshakeTime.writePrometheus(sb, "gomoku_tls_handshake_seconds", l, 1e-9, 14, 34);
+        }
+        gauge(sb, "gomoku_jvm_threads", l, getThreadCount());
+        gauge(sb, "gomoku_pool_threads", l, pool.getPoolSize());
+        gauge(sb, "gomoku_pool_active_threads", l, pool.getActiveCount());
+        return sb.toString();
+    }
+
+    private static void gauge(StringBuilder sb, String name, String labels, long v) {
+        sb.append("# TYPE ").append(name).append(" gauge\n").append(name).append('{').append(labels).append("} ").append(v).append('\n');
+    }
+
+    private static void counter(StringBuilder sb, String name, String labels, long v) {
+        sb.append("# TYPE ").append(name).append(" counter\n").append(name).append('{').append(labels).append("} ").append(v).append('\n');
+    }
+
+    // ---- MetricsMXBean ----
+
+    @Override public long getActiveConnections() { return activeConnections.sum(); }
+    @Override public long getWaitingPlayers() { return waitingDepth.getAsLong(); }
+    @Override public long getActiveSessions() { return activeSessions.sum(); }
+
+    @Override
+    public long getMessagesTotal() {
+        long t = 0;
+        for (LongAdder a : messages) t += a.sum();
+        return t;
+    }
+
+    @Override public long getBytesIn() { return bytesIn.sum(); }
+    @Override public long getBytesOut() { return bytesOut.sum(); }
+    @Override public long getRelayLatencyP50Micros() { return relayLatency.quantile(0.5) / 1000; }
+    @Override public long getRelayLatencyP99Micros() { return relayLatency.quantile(0.99) / 1000; }
+    @Override public long getHandshakeP99Millis() { return handshakeTime.quantile(0.99) / 1_000_000; }
+    @Override public int getThreadCount() { return ManagementFactory.getThreadMXBean().getThreadCount(); }
+    @Override public int getActivePoolThreads() { return pool.getActiveCount(); }
+}
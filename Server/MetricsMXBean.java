@@ -0,0 +1,18 @@
+package Server;
+
+/**
+ * 通过 JMX 暴露的服务器指标（jconsole / VisualVM 中位于 gomoku:type=Server）。
+ */
+public interface MetricsMXBean {
+    long getActiveConnections();
+    long getWaitingPlayers();
+    long getActiveSessions();
+    long getMessagesTotal();
+    long getBytesIn();
+    long getBytesOut();
+    long getRelayLatencyP50Micros();
+    long getRelayLatencyP99Micros();
+    long getHandshakeP99Millis();
+    int getThreadCount();
+    int getActivePoolThreads();
+}
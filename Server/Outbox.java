@@ -0,0 +1,161 @@
+package Server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个连接的发送队列，分两个通道：
+ * - 控制通道：对局消息（MOVE、UNDO、GAME_OVER、PING、会话消息等），保序、不丢弃，优先写出；
+ *   积压超过 maxControlBytes 说明对方已跟不上对局本身，直接断开连接（进入断线宽限期）；
+ * - 聊天通道：有界，满时丢弃最旧的一条；被丢弃的条数在下一次写聊天前合并成一行 CHAT_DROPPED:<n> 告知对方。
+ *
+ * 入队方（对方的读取线程、时间轮、节点链路）从不阻塞：队列由空变为非空时向线程池提交一次写出任务，
+ * 由该任务写到队列为空。
+ *
+ * 控制通道不按行分配数组：入队时把字节追加到一块可增长的缓冲区，写出任务与备用缓冲区交换后整块写出，
+ * 稳定状态下中继一行没有任何分配，积压的多行也合并成一次写出。聊天行仍逐条保存（需要按条丢弃，且已限流）。
+ */
+final class Outbox implements Runnable {
+    // 关闭时最多再等这么久把已排队的消息写完
+    private static final long LINGER_MILLIS = 5_000;
+
+    private final OutputStream out;
+    private final Socket socket;
+    private final Executor exec;
+    private final TimerWheel wheel;
+    private final int chatCapacity;
+    private final int maxControlBytes;
+    private final LongAdder chatDropped;
+    private final LongAdder slowConsumers;
+
+    // 以下字段在 this 上同步；spare 在写出任务持有它期间为 null
+    private byte[] control = new byte[4096];
+    private byte[] spare = new byte[4096];
+    private int controlBytes;
+    private final ArrayDeque<byte[]> chat = new ArrayDeque<>();
+    private int droppedPending;
+    private boolean scheduled, closing, closed;
+
+    Outbox(OutputStream out, Socket socket, Executor exec, TimerWheel wheel, int chatCapacity, int maxControlBytes,
+           LongAdder chatDropped, LongAdder slowConsumers) {
+        this.out = out;
+        this.socket = socket;
+        this.exec = exec;
+        this.wheel = wheel;
+        this.chatCapacity = chatCapacity;
+        this.maxControlBytes = maxControlBytes;
+        this.chatDropped = chatDropped;
+        this.slowConsumers = slowConsumers;
+    }
+
+    /** 排入一行 [off, off+len)（含 '\n'）；字节在返回前已复制，调用方可继续复用缓冲区。 */
+    void offer(byte[] b, int off, int len, boolean isChat) {
+        boolean start, overflow = false;
+        synchronized (this) {
+            if (closing) return;
+            if (isChat) {
+                if (chat.size() >= chatCapacity) {
+                    chat.poll();
+                    droppedPending++;
+                    chatDropped.increment();
+                }
+                chat.add(Arrays.copyOfRange(b, off, off + len));
+            } else if (controlBytes + len > maxControlBytes) {
+                overflow = true;
+            } else {
+                if (controlBytes + len > control.length) {
+                    control = Arrays.copyOf(control, Math.min(maxControlBytes, Math.max(2 * control.length, controlBytes + len)));
+                }
+                System.arraycopy(b, off, control, controlBytes, len);
+                controlBytes += len;
+            }
+            start = !scheduled;
+            scheduled = true;
+        }
+        if (overflow) {
+            slowConsumers.increment();
+            abort();
+            return;
+        }
+        if (start) exec.execute(this);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                byte[] chunk = null, next = null;
+                int n = 0;
+                synchronized (this) {
+                    if (controlBytes > 0) {
+                        // 取走整块控制通道字节，入队方改写备用缓冲区
+                        chunk = control;
+                        n = controlBytes;
+                        control = spare;
+                        spare = null;
+                        controlBytes = 0;
+                    } else if (droppedPending > 0) {
+                        next = ("CHAT_DROPPED:" + droppedPending + "\n").getBytes(StandardCharsets.US_ASCII);
+                        droppedPending = 0;
+                    } else {
+                        next = chat.poll();
+                    }
+                    if (chunk == null && next == null) {
+                        scheduled = false;
+                        if (closing) closeSocket();
+                        return;
+                    }
+                }
+                if (chunk != null) {
+                    out.write(chunk, 0, n);
+                    synchronized (this) { spare = chunk; }
+                } else {
+                    out.write(next);
+                }
+            }
+        } catch (IOException e) {
+            abort();
+        }
+    }
+
+    /** 写完已排队的控制消息后关闭（聊天直接丢弃）；对方迟迟不读时 LINGER_MILLIS 后强制关闭。 */
+    void close() {
+        boolean idle;
+        synchronized (this) {
+            if (closing) return;
+            closing = true;
+            chat.clear();
+            droppedPending = 0;
+            idle = !scheduled;
+        }
+        if (idle) {
+            synchronized (this) { closeSocket(); }
+        } else {
+            wheel.schedule(this::abort, LINGER_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** 立即关闭并丢弃所有排队消息；阻塞中的写出随之失败退出。 */
+    void abort() {
+        synchronized (this) {
+            closing = true;
+            chat.clear();
+            controlBytes = 0;
+            closeSocket();
+        }
+    }
+
+    // 调用方持有 this 锁
+    private void closeSocket() {
+        if (closed) return;
+        closed = true;
+        try { socket.close(); } catch (IOException ignored) {}
+    }
+}
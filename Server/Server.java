@@ -1,41 +1,164 @@
 package Server;
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import model.Move;
 
 /**
  * 修正后的简单匹配服务器：每两个连接配对成一局并中继消息（文本协议）。
- * 使用方式: java Server [port]
+ * 使用方式: java Server.Server [port] [graceSeconds]
  *
  * 要点：
- * - 在 accept 后即时读取客户端 NAME 行（同步），然后再进行配对，避免原来那种 put/take 的竞态/自取问题。
- * - 为每个已配对的客户端创建转发线程，转发时打印日志，便于排查。
+ * - accept 线程只负责接受连接；NAME/RESUME 握手交给线程池，并受握手超时约束，慢客户端不会阻塞 accept。
+ * - 为每个连接创建一条读取线程，配对后转发给对方。中继按换行字节分帧（LineFramer），
+ *   原样转发字节切片，只解析路由与记谱需要的几个操作码字节，不做 UTF-8 解码/重新编码。
+ *   逐条转发日志默认关闭（-Dgomoku.logRelay=true 打开，打开后会解码每条消息）。
+ * - 开局时为双方各发放一个会话令牌（SESSION），断线后会话保留 graceSeconds 秒；
+ *   客户端用 RESUME:<token>:<已知步数>:<棋谱哈希> 重连，服务器只补发缺失的棋步（SYNC）。
+ * - 握手超时、心跳（PING/PONG）、空闲回收与走棋计时全部由同一个 TimerWheel 驱动。
+ *
+ * - 多节点部署：各节点通过 ClusterLink 互连，大厅（配对队列）与每个会话按一致性哈希归属到某个节点；
+ *   玩家连接的节点（home）只负责读写 socket，把消息经节点间链路转给会话所在节点（owner）。
+ *
+ * 计时参数（系统属性，单位秒）：
+ *   gomoku.handshakeSeconds（默认 10）、gomoku.heartbeatSeconds（默认 15）、
+ *   gomoku.idleSeconds（默认 45）、gomoku.turnSeconds（默认 120，0 表示不计时）
+ * 集群参数（系统属性，不设置则为单节点）：
+ *   gomoku.node=a  gomoku.cluster=a@127.0.0.1:7001,b@127.0.0.1:7002
+ * 指标：gomoku.metricsPort=9100 时在 http://host:9100/metrics 输出 Prometheus 文本；JMX 始终注册。
+ * TLS（可选）：gomoku.tls.keystore=<PKCS12 文件> 时客户端连接改为 TLS，其余参数见 TlsSupport。
  */
 public class Server {
 	// port保存端口号
     private final int port;
-    
+
+    // 断线后保留会话的宽限期（毫秒）
+    private final long graceMillis;
+
+    private final long handshakeMillis = Long.getLong("gomoku.handshakeSeconds", 10) * 1000;
+    private final long heartbeatMillis = Long.getLong("gomoku.heartbeatSeconds", 15) * 1000;
+    private final long idleMillis = Long.getLong("gomoku.idleSeconds", 45) * 1000;
+    private final long turnMillis = Long.getLong("gomoku.turnSeconds", 120) * 1000;
+    private final boolean logRelay = Boolean.getBoolean("gomoku.logRelay");
+
+    // 聊天：每连接限流（条/秒，0 表示不限）与突发上限、单条长度上限（字节）
+    private final double chatRate = Double.parseDouble(System.getProperty("gomoku.chatRate", "2"));
+    private final int chatBurst = Integer.getInteger("gomoku.chatBurst", 5);
+    private final int chatMaxBytes = Integer.getInteger("gomoku.chatMaxBytes", 512);
+    // 发送分控制/聊天两个通道并由线程池异步写出；false 时退回同步直写（对照测量用）
+    private final boolean chatLanes = Boolean.parseBoolean(System.getProperty("gomoku.chatLanes", "true"));
+    private final int chatQueue = Integer.getInteger("gomoku.chatQueue", 16);
+    // 分道时调小内核发送缓冲区：已交给内核的聊天无法再被对局消息超车，缓冲越大排在前面的聊天越多
+    private final int sendBufferBytes = Integer.getInteger("gomoku.sendBufferBytes", 32 * 1024);
+    // 控制通道积压上限，超过即视为对方无法跟上对局而断开
+    private static final int MAX_CONTROL_BACKLOG = 1024 * 1024;
+
+    // 单行最大长度（字节），超过则视为协议错误断开
+    private static final int MAX_LINE = 16 * 1024;
+
+    // 中继路径上需要识别的操作码（ASCII 字节）
+    private static final byte[] OP_MOVE = LineFramer.ascii("MOVE:");
+    // 悔棋消息带 :<撤后步数>；前缀匹配时不含冒号，不带步数的旧格式解析为 -1，不会被执行
+    private static final byte[] OP_UNDO_REQUEST = LineFramer.ascii("UNDO_REQUEST");
+    private static final byte[] OP_UNDO_ACCEPT = LineFramer.ascii("UNDO_ACCEPT");
+    private static final byte[] OP_UNDO_DENY = LineFramer.ascii("UNDO_DENY");
+    // 重置带 :<局号>；同样不含冒号匹配，不带局号的旧格式不会被执行
+    private static final byte[] OP_RESET = LineFramer.ascii("RESET");
+    private static final byte[] OP_GAME_OVER = LineFramer.ascii("GAME_OVER:");
+    private static final byte[] OP_PONG = LineFramer.ascii("PONG");
+    private static final byte[] OP_CHAT = LineFramer.ascii("CHAT:");
+    private static final byte[] OP_SYNC_REQUEST = LineFramer.ascii("SYNC_REQUEST");
+
     // ServerSocket 用于监听客户端连接
     private ServerSocket serverSocket;
-    
-    // ExecutorService 线程池接口 
+
+    // ExecutorService 线程池接口
     // CachedThreadPool 会根据需要创建新线程并复用空闲线程，适合连接数不确定但每个任务短暂的场景。
     private final ExecutorService exec = Executors.newCachedThreadPool();
+
+    // 全部定时任务共用一个时间轮线程（100ms 一格，512 格一圈）
+    private final TimerWheel wheel = new TimerWheel(100, 512, "server-timer-wheel");
+
     /*
      * 这是一个线程安全的队列，
      * 用于存放等待配对的 ClientHandler（等待对手加入）。
-     * BlockingQueue 的好处是可以阻塞 put/take 操作（本代码用了 put 和 poll）
+     * 握手在多个线程上并发完成，因此配对时以 waiting 本身加锁，保证 poll/offer 组合是原子的。
+     * 只有大厅归属节点使用此队列；其中可能有其他节点上的玩家（RemoteClient）。
      */
-    private final BlockingQueue<ClientHandler> waiting = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Conn> waiting = new LinkedBlockingQueue<>();
+
+    // 会话令牌 -> 会话，用于断线重连时找回对局
+    private final Map<String, GameSession> sessionsByToken = new ConcurrentHashMap<>();
+    // 各会话的服务器侧棋局（堆外定长槽位，会话结束后回收）
+    private final SessionStore boards = new SessionStore();
+
+    private final SecureRandom random = new SecureRandom();
+
+    // 集群：本节点 ID、一致性哈希环与节点间链路（单节点时 link 为 null）
+    private final String nodeId;
+    private final HashRing ring;
+    private final ClusterLink link;
+    private final AtomicLong connIds = new AtomicLong();
+    // 本节点上的客户端连接（connId -> 连接），供其他节点的 BIND/DOWN/CLOSE 帧定位
+    private final Map<Long, ClientHandler> localConns = new ConcurrentHashMap<>();
+    // 本节点作为大厅或会话归属节点时代表其他节点上玩家的句柄（node/connId -> 句柄）
+    private final Map<String, RemoteClient> remoteClients = new ConcurrentHashMap<>();
+
+    private final Metrics metrics;
+    // 可选 TLS（设置 gomoku.tls.keystore 时启用），null 表示明文
+    private TlsSupport tls;
+
+    // 大厅（配对队列）在哈希环上的键；会话 ID 的长度（令牌的前缀）
+    private static final String LOBBY = "lobby";
+    private static final int SESSION_ID_LENGTH = 16;
 
     // 构造函数
-    public Server(int port) { this.port = port; }
+    public Server(int port) { this(port, 60_000); }
+
+    public Server(int port, long graceMillis) {
+        this(port, graceMillis, "local", null);
+    }
+
+    public Server(int port, long graceMillis, String nodeId, Map<String, InetSocketAddress> cluster) {
+        this.port = port;
+        this.graceMillis = graceMillis;
+        this.nodeId = nodeId;
+        this.metrics = new Metrics(nodeId, waiting::size, (ThreadPoolExecutor) exec, boards);
+        if (cluster == null || cluster.isEmpty()) {
+            this.ring = new HashRing(java.util.Collections.singleton(nodeId));
+            this.link = null;
+        } else {
+            this.ring = new HashRing(cluster.keySet());
+            this.link = new ClusterLink(nodeId, cluster, this::onFrame, exec);
+        }
+    }
 
     public void start() throws IOException {
     	// 在指定端口创建一个监听套接字
         serverSocket = new ServerSocket(port);
-        System.out.println("Server started on port " + port);
-        
+        tls = TlsSupport.fromProperties(handshakeMillis, metrics);
+        if (tls != null) metrics.tlsQueueDepth = tls::queuedHandshakes;
+        if (link != null) link.listen();
+        int metricsPort = Integer.getInteger("gomoku.metricsPort", 0);
+        if (metricsPort > 0) metrics.startHttp(metricsPort);
+        metrics.registerJmx();
+        System.out.println("Server " + nodeId + " started on port " + port + " (grace " + graceMillis / 1000 + "s)"
+                + (link != null ? ", lobby owner " + ring.owner(LOBBY) : "") + (tls != null ? ", TLS" : ""));
+        if (Boolean.getBoolean("gomoku.startupTrace")) {
+            System.out.println("startup: listening "
+                    + (System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime()) + " ms");
+        }
+
         while (true) {
         	/*
         	 * accept() 是一个阻塞调用：
@@ -44,20 +167,55 @@ public class Server {
         	 * 返回一个代表客户端连接的 Socket。
         	 */
             Socket sock = serverSocket.accept();
-            
+
             // sock.getRemoteSocketAddress()：打印客户端地址
             System.out.println("Client connected: " + sock.getRemoteSocketAddress());
-            
-            // 初始化流并读取 NAME 行（非异步），这样后面配对时我们已经知道 name 与 IO
+
+            // 握手与后续读取在线程池中进行，accept 循环立即返回接受下一个连接；
+            // 启用 TLS 时先在独立的有界握手池中完成 TLS 握手
+            if (tls != null) tls.handshake(sock, this::dispatch);
+            else dispatch(sock);
+        }
+    }
+
+    private void dispatch(Socket sock) {
+        exec.submit(() -> {
+            metrics.activeConnections.increment();
+            metrics.connectionsTotal.increment();
             try {
-            	// 为Socket创建输入/输出流
-            	// PrintWriter的第二个参数表示自动flush(每次println后自动刷新）
-                BufferedReader in = new BufferedReader(new InputStreamReader(sock.getInputStream(), "UTF-8"));
-                PrintWriter out = new PrintWriter(new OutputStreamWriter(sock.getOutputStream(), "UTF-8"), true);
-                
-                //读取客户端发来的第一行文本
-                String line = in.readLine();
-                
+                serve(sock);
+            } finally {
+                metrics.activeConnections.decrement();
+            }
+        });
+    }
+
+    // 单个连接的生命周期：握手（带超时）-> 配对或重连 -> 读取循环 -> 断线处理
+    private void serve(Socket sock) {
+        long acceptedNanos = System.nanoTime();
+        // 握手截止：到期未完成则关闭 socket，阻塞中的读取随之抛出异常
+        TimerWheel.Timeout deadline = wheel.schedule(() -> closeQuietly(sock), handshakeMillis, TimeUnit.MILLISECONDS);
+        ClientHandler ch;
+        try {
+            // 关闭 Nagle：转发给对方的 MOVE 往往紧跟在未被确认的小包之后，会被攒到对端延迟确认才发出
+            // （实测中继走棋 p50 约 15ms，关闭后约 0.1ms）；批量写出已由 Outbox 负责
+            sock.setTcpNoDelay(true);
+        	// 为Socket创建输入/输出流：输入按行分帧，输出直接写字节（每次写一整行，无需 flush）
+            // 流外包一层字节计数（LongAdder，无锁）
+            if (chatLanes && sendBufferBytes > 0) sock.setSendBufferSize(sendBufferBytes);
+            LineFramer in = new LineFramer(metrics.countIn(sock.getInputStream()), 2048, MAX_LINE);
+            OutputStream out = metrics.countOut(sock.getOutputStream());
+
+            //读取客户端发来的第一行文本（握手不在热路径上，解码成 String）
+            String line = in.next() ? in.decode() : null;
+            if (!deadline.cancel()) throw new IOException("handshake timed out");
+            metrics.handshakeTime.record(System.nanoTime() - acceptedNanos);
+
+            // 断线重连：RESUME:<token>:<lastMoveIndex>:<historyHash>
+            if (line != null && line.startsWith("RESUME:")) {
+                ch = handleResume(line, sock, in, out);
+                if (ch == null) return;
+            } else {
                 /*
                  * 解析第一行，如果以 "NAME:" 开头就把冒号后的字符串
                  * 作为客户端用户名，
@@ -66,107 +224,882 @@ public class Server {
                 String name = (line != null && line.startsWith("NAME:")) ? line.substring(5) : sock.getRemoteSocketAddress().toString();
 
                 // 把 socket + IO 流 + name 封装成一个 ClientHandler 对象，方便后续传递与处理
-                ClientHandler ch = new ClientHandler(sock, name, in, out);
-                
-                // 尝试从等待队列拿一个对手
-                ClientHandler opponent = waiting.poll();
-                if (opponent == null) {
-                    // 没有等待者，加入队列等待被配对
-                    waiting.put(ch);
-                    System.out.println("等待配对: " + ch.name);
+                ch = newHandler(sock, name, in, out);
+                localConns.put(ch.id, ch);
+                startHeartbeat(ch);
+                String lobby = ring.owner(LOBBY);
+                if (lobby.equals(nodeId)) {
+                    match(ch);
+                } else if (!sendFrame(lobby, ClusterLink.JOIN, o -> { o.writeLong(ch.id); o.writeUTF(ch.name); })) {
+                    throw new IOException("lobby node " + lobby + " unreachable");
+                }
+            }
+            /*
+             * 捕获初始化流时的异常
+             * （例如读第一行时抛异常或握手超时），
+             * 并尝试关闭 socket 以释放资源。
+             */
+        } catch (IOException e) {
+            deadline.cancel();
+            metrics.handshakeFailures.increment();
+            System.err.println("Handshake failed: " + e.getMessage());
+            closeQuietly(sock);
+            return;
+        }
+        readLoop(ch);
+    }
+
+    private void match(Conn ch) {
+        Conn opponent;
+        synchronized (waiting) {
+            // 尝试从等待队列拿一个对手（跳过等待期间已断开的连接）
+            opponent = waiting.poll();
+            while (opponent != null && opponent.closed) opponent = waiting.poll();
+            if (opponent == null) {
+                // 没有等待者，加入队列等待被配对
+                waiting.offer(ch);
+                System.out.println("等待配对: " + ch.name);
+            } else {
+                // 找到对手，创建会话
+                System.out.println("匹配成功: " + ch.name + " vs " + opponent.name);
+            }
+        }
+        if (opponent == null) return;
+        String sid = newToken().substring(0, SESSION_ID_LENGTH);
+        String owner = ring.owner(sid);
+        if (owner.equals(nodeId)) {
+            new GameSession(sid, ch, opponent).start();
+            return;
+        }
+        // 会话归属其他节点：把双方的 (home 节点, connId, 名字) 交给归属节点建局
+        final Conn a = ch, b = opponent;
+        boolean ok = sendFrame(owner, ClusterLink.CREATE, o -> {
+            o.writeUTF(sid);
+            writeConnRef(o, a);
+            writeConnRef(o, b);
+        });
+        if (!ok) {
+            a.close();
+            b.close();
+        }
+        for (Conn c : new Conn[] {a, b}) {
+            if (c instanceof RemoteClient) remoteClients.remove(((RemoteClient) c).key());
+        }
+    }
+
+    private void writeConnRef(DataOutputStream o, Conn c) throws IOException {
+        if (c instanceof RemoteClient) {
+            RemoteClient rc = (RemoteClient) c;
+            o.writeUTF(rc.node);
+            o.writeLong(rc.connId);
+        } else {
+            o.writeUTF(nodeId);
+            o.writeLong(((ClientHandler) c).id);
+        }
+        o.writeUTF(c.name);
+    }
+
+    // 根据 (home 节点, connId) 找到连接：本节点直接取本地连接，否则建立 RemoteClient 句柄
+    private Conn resolve(String node, long connId, String name) {
+        if (node.equals(nodeId)) {
+            ClientHandler ch = localConns.get(connId);
+            if (ch != null) return ch;
+            RemoteClient gone = new RemoteClient(node, connId, name);
+            gone.closed = true;
+            return gone;
+        }
+        return remoteClients.computeIfAbsent(node + "/" + connId, k -> new RemoteClient(node, connId, name));
+    }
+
+    private boolean sendFrame(String node, byte type, ClusterLink.Payload payload) {
+        try {
+            link.send(node, type, payload);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Cluster send to " + node + " failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // 处理其他节点发来的帧（在该链路的读取线程上执行）
+    private void onFrame(String from, byte type, DataInputStream in) throws IOException {
+        switch (type) {
+            case ClusterLink.JOIN: {
+                long id = in.readLong();
+                match(resolve(from, id, in.readUTF()));
+                break;
+            }
+            case ClusterLink.LEAVE: {
+                RemoteClient rc = remoteClients.remove(from + "/" + in.readLong());
+                if (rc != null) {
+                    rc.closed = true;
+                    synchronized (waiting) { waiting.remove(rc); }
+                }
+                break;
+            }
+            case ClusterLink.CREATE: {
+                String sid = in.readUTF();
+                Conn a = resolve(in.readUTF(), in.readLong(), in.readUTF());
+                Conn b = resolve(in.readUTF(), in.readLong(), in.readUTF());
+                new GameSession(sid, a, b).start();
+                break;
+            }
+            case ClusterLink.BIND: {
+                long id = in.readLong();
+                ClientHandler ch = localConns.get(id);
+                if (ch == null || ch.closed) {
+                    // 连接已断开：告知归属节点，使其进入断线宽限期
+                    sendFrame(from, ClusterLink.GONE, o -> o.writeLong(id));
                 } else {
-                    // 找到对手，创建会话
-                    System.out.println("匹配成功: " + ch.name + " vs " + opponent.name);
-                    
-                    // 创建 GameSession（会话/对局）并提交给线程池执行
-                    GameSession session = new GameSession(ch, opponent);
-                    exec.submit(session);
+                    ch.routeNode = from;
                 }
-                /*
-                 * 捕获初始化流或队列操作中的异常
-                 * （例如读第一行时抛异常或 put 被中断），
-                 * 并尝试关闭 socket 以释放资源。
-                 */
-            } catch (IOException | InterruptedException e) {
-                System.err.println("Accept-handling failed: " + e.getMessage());
-                try { sock.close(); } catch (IOException ex) { /* ignore */ }
+                break;
+            }
+            case ClusterLink.UP: {
+                // 负载：connId, int 长度, 原始行字节（含 '\n'）
+                long now = System.nanoTime();
+                RemoteClient rc = remoteClients.get(from + "/" + in.readLong());
+                byte[] line = new byte[in.readInt()];
+                in.readFully(line);
+                GameSession s = (rc != null) ? rc.session : null;
+                // 链路读取线程为所有跨节点消息共用：发往本节点客户端的部分不在此阻塞写出
+                if (s != null) s.relay(rc, line, 0, line.length - 1, now, true);
+                break;
+            }
+            case ClusterLink.DOWN: {
+                ClientHandler ch = localConns.get(in.readLong());
+                byte[] line = new byte[in.readInt()];
+                in.readFully(line);
+                // 链路读取线程为所有跨节点消息共用，不能在此阻塞写客户端
+                if (ch != null) ch.sendLater(line);
+                break;
+            }
+            case ClusterLink.CLOSE: {
+                ClientHandler ch = localConns.get(in.readLong());
+                if (ch != null) ch.close();
+                break;
+            }
+            case ClusterLink.GONE: {
+                RemoteClient rc = remoteClients.remove(from + "/" + in.readLong());
+                if (rc != null) {
+                    rc.closed = true;
+                    GameSession s = rc.session;
+                    if (s != null) s.onDisconnect(rc);
+                    else synchronized (waiting) { waiting.remove(rc); }
+                }
+                break;
+            }
+            case ClusterLink.RESUME: {
+                long id = in.readLong();
+                String name = in.readUTF();
+                String line = in.readUTF();
+                RemoteClient rc = new RemoteClient(from, id, name);
+                remoteClients.put(rc.key(), rc);
+                if (!resume(line, rc)) {
+                    rc.send("RESUME_FAILED");
+                    rc.close();
+                }
+                break;
+            }
+            default:
+                System.err.println("Unknown cluster frame " + type + " from " + from);
+        }
+    }
+
+    // 连接读取循环：PONG 仅刷新活跃时间；配对后的消息交给会话中继
+    private void readLoop(ClientHandler ch) {
+        LineFramer in = ch.in;
+        try {
+            // 循环读取阻塞直到收到对方发来的新行或对方关闭连接
+            while (in.next()) {
+                long now = System.nanoTime();
+                ch.lastReadNanos = now;
+                byte[] b = in.buf();
+                int off = in.start(), len = in.length();
+                if (LineFramer.equals(b, off, len, OP_PONG)) {
+                    metrics.message(Metrics.MSG_PONG);
+                    continue;
+                }
+                if (LineFramer.startsWith(b, off, len, OP_CHAT) && !admitChat(ch, len, now)) continue;
+                GameSession s = ch.session;
+                String route = ch.routeNode;
+                if (s != null) {
+                    s.relay(ch, b, off, len, now, false);
+                } else if (route != null) {
+                    // 会话在其他节点：经节点间链路上送原始字节
+                    sendFrame(route, ClusterLink.UP, o -> {
+                        o.writeLong(ch.id);
+                        o.writeInt(len + 1);
+                        o.write(b, off, len + 1);
+                    });
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Connection closed: " + ch.name + ": " + e.getMessage());
+        } finally {
+            ch.close();
+            localConns.remove(ch.id);
+            GameSession s = ch.session;
+            String route = ch.routeNode;
+            String lobby = ring.owner(LOBBY);
+            if (s != null) {
+                s.onDisconnect(ch);
+            } else if (route != null) {
+                sendFrame(route, ClusterLink.GONE, o -> o.writeLong(ch.id));
+            } else if (lobby.equals(nodeId)) {
+                synchronized (waiting) { waiting.remove(ch); }
+            } else {
+                sendFrame(lobby, ClusterLink.LEAVE, o -> o.writeLong(ch.id));
             }
         }
     }
 
+    // 聊天入口检查：超长或超出限流的消息不转发，并告知发送方（限流提示在恢复发言前只发一次）
+    private boolean admitChat(ClientHandler ch, int len, long now) {
+        if (len > chatMaxBytes) {
+            metrics.chatTooLong.increment();
+            ch.send("CHAT_REJECTED:TOO_LONG");
+            return false;
+        }
+        if (ch.chatBucket != null && !ch.chatBucket.tryAcquire(now)) {
+            metrics.chatRateLimited.increment();
+            if (!ch.chatLimited) ch.send("CHAT_REJECTED:RATE");
+            ch.chatLimited = true;
+            return false;
+        }
+        ch.chatLimited = false;
+        return true;
+    }
+
+    /*
+     * 心跳与空闲回收合并为每连接一个周期性的时间轮任务：
+     * 超过 idleMillis 没有任何输入（包括 PONG）则关闭连接，否则发送 PING 并安排下一次检查。
+     */
+    private void startHeartbeat(ClientHandler ch) {
+        wheel.schedule(() -> heartbeat(ch), heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void heartbeat(ClientHandler ch) {
+        if (ch.closed) return;
+        long idle = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - ch.lastReadNanos);
+        if (idle > idleMillis) {
+            System.out.println("Reaping idle connection: " + ch.name + " (" + idle / 1000 + "s)");
+            metrics.idleReaped.increment();
+            ch.abort();
+            return;
+        }
+        // 时间轮线程不能阻塞：直写模式或节点链路上的发送交给线程池
+        exec.execute(() -> ch.send("PING"));
+        startHeartbeat(ch);
+    }
+
+    private ClientHandler handleResume(String line, Socket sock, LineFramer in, OutputStream out) {
+        String[] p = line.split(":");
+        String token = (p.length >= 2) ? p[1] : "";
+        String owner = (token.length() > SESSION_ID_LENGTH) ? ring.owner(token.substring(0, SESSION_ID_LENGTH)) : nodeId;
+        GameSession session = sessionsByToken.get(token);
+        String name = (session != null) ? session.seats[session.seatOf(token)].name : sock.getRemoteSocketAddress().toString();
+        ClientHandler ch = newHandler(sock, name, in, out);
+        if (!owner.equals(nodeId)) {
+            // 会话归属其他节点：把重连请求转给归属节点，之后按 BIND 路由
+            localConns.put(ch.id, ch);
+            startHeartbeat(ch);
+            if (sendFrame(owner, ClusterLink.RESUME, o -> { o.writeLong(ch.id); o.writeUTF(name); o.writeUTF(line); })) return ch;
+            localConns.remove(ch.id);
+        } else if (resume(line, ch)) {
+            startHeartbeat(ch);
+            return ch;
+        }
+        ch.send("RESUME_FAILED");
+        ch.close();
+        return null;
+    }
+
+    private ClientHandler newHandler(Socket sock, String name, LineFramer in, OutputStream out) {
+        Outbox outbox = chatLanes
+                ? new Outbox(out, sock, exec, wheel, chatQueue, MAX_CONTROL_BACKLOG, metrics.chatDropped, metrics.slowConsumers)
+                : null;
+        TokenBucket bucket = chatRate > 0 ? new TokenBucket(chatRate, chatBurst) : null;
+        return new ClientHandler(connIds.incrementAndGet(), sock, name, in, out, outbox, bucket, exec);
+    }
+
+    // 在本节点（会话归属节点）上执行重连：RESUME:<token>:<lastMoveIndex>:<historyHash>
+    private boolean resume(String line, Conn conn) {
+        String[] p = line.split(":");
+        GameSession session = (p.length >= 4) ? sessionsByToken.get(p[1]) : null;
+        if (session == null) return false;
+        try {
+            int known = Integer.parseInt(p[2]);
+            long hash = Move.parseHash(p[3]);
+            return session.resume(session.seatOf(p[1]), conn, known, hash);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private String newToken() {
+        byte[] b = new byte[16];
+        random.nextBytes(b);
+        StringBuilder sb = new StringBuilder();
+        for (byte x : b) sb.append(String.format("%02x", x));
+        return sb.toString();
+    }
+
+    private static void closeQuietly(Socket s) {
+        try { s.close(); } catch (IOException ignored) {}
+    }
+
+    // 会话视角下的一方连接：可能是本节点的 socket，也可能是其他节点上的玩家
+    private abstract static class Conn {
+        final String name;
+        volatile boolean closed;
+        // 配对或重连后所属的会话与座位
+        volatile GameSession session;
+        volatile int seat;
+
+        Conn(String name) { this.name = name; }
+
+        /** 发送服务器生成的消息（编码为 UTF-8 并加换行）。 */
+        void send(String msg) {
+            byte[] b = line(msg);
+            sendRaw(b, 0, b.length);
+        }
+
+        /** 原样发送一行字节；[off, off+len) 必须以 '\n' 结尾。 */
+        abstract void sendRaw(byte[] b, int off, int len);
+
+        /** 不阻塞调用方的发送（line 含 '\n'，调用方交出数组所有权）；默认即 sendRaw。 */
+        void sendLater(byte[] line) {
+            sendRaw(line, 0, line.length);
+        }
+
+        static byte[] line(String msg) {
+            return (msg + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+
+        /** 关闭连接；已排队的控制消息尽量先写完。 */
+        abstract void close();
+
+        /** 立即关闭，丢弃未写出的消息（对方已不可达时使用）。 */
+        void abort() { close(); }
+    }
+
     // 数据容器，封装每个连接所需的信息
-    private static class ClientHandler {
+    private static class ClientHandler extends Conn {
+        final long id;
         final Socket socket;
-        final String name;
-        final BufferedReader in;
-        final PrintWriter out;
+        final LineFramer in;
+        final OutputStream out;
+        // 发送队列（聊天分道）；为 null 时同步直写
+        final Outbox outbox;
+        // 聊天限流（只在本连接的读取线程上使用）；为 null 时不限流
+        final TokenBucket chatBucket;
+        boolean chatLimited;
+        volatile long lastReadNanos = System.nanoTime();
+        // 会话在其他节点时的归属节点（收到 BIND 后设置）
+        volatile String routeNode;
+        // 无发送队列时 sendLater 的待写行，由线程池上的单个任务按序写出
+        private final Executor exec;
+        private final Queue<byte[]> deferred = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
 
-        ClientHandler(Socket socket, String name, BufferedReader in, PrintWriter out) {
+        ClientHandler(long id, Socket socket, String name, LineFramer in, OutputStream out, Outbox outbox,
+                      TokenBucket chatBucket, Executor exec) {
+            super(name);
+            this.id = id;
             this.socket = socket;
-            this.name = name;
             this.in = in;
             this.out = out;
+            this.outbox = outbox;
+            this.chatBucket = chatBucket;
+            this.exec = exec;
         }
 
-        void send(String msg) {
-            out.println(msg);
+        /** 不阻塞调用方的发送（line 含 '\n'，调用方交出数组所有权）；多次调用按顺序写出。 */
+        @Override
+        void sendLater(byte[] line) {
+            if (outbox != null) {
+                sendRaw(line, 0, line.length);
+                return;
+            }
+            deferred.add(line);
+            if (draining.compareAndSet(false, true)) exec.execute(this::drain);
+        }
+
+        private void drain() {
+            while (true) {
+                byte[] line;
+                while ((line = deferred.poll()) != null) sendRaw(line, 0, line.length);
+                draining.set(false);
+                // 释放标志后新到的行：若没有其他任务接手则继续写
+                if (deferred.isEmpty() || !draining.compareAndSet(false, true)) return;
+            }
+        }
+
+        /*
+         * 多个线程（对方的读取线程、时间轮、节点链路）可能同时写同一连接。
+         * 有发送队列时把该行复制进队列后立即返回（调用方的缓冲区只在本次调用内有效，控制通道复制进共享缓冲区不分配），
+         * 聊天行进入低优先级通道；
+         * 否则以输出流加锁保证整行写出。
+         */
+        void sendRaw(byte[] b, int off, int len) {
+            if (outbox != null) {
+                outbox.offer(b, off, len, LineFramer.startsWith(b, off, len, OP_CHAT));
+                return;
+            }
+            try {
+                synchronized (out) {
+                    out.write(b, off, len);
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void close() {
+            closed = true;
+            if (outbox != null) outbox.close();
+            else closeQuietly(socket);
+        }
+
+        @Override
+        void abort() {
+            closed = true;
+            if (outbox != null) outbox.abort();
+            else closeQuietly(socket);
         }
     }
 
-    // 用于执行会话相关工作（分配颜色并启动消息转发）
-    private class GameSession implements Runnable {
-        final ClientHandler a, b;
+    // 其他节点上的玩家：发送经链路 DOWN 到其 home 节点，关闭则发 CLOSE
+    private class RemoteClient extends Conn {
+        final String node;
+        final long connId;
 
-        GameSession(ClientHandler a, ClientHandler b) {
-            this.a = a;
-            this.b = b;
+        RemoteClient(String node, long connId, String name) {
+            super(name);
+            this.node = node;
+            this.connId = connId;
         }
 
-        public void run() {
-            System.out.println("New game session: " + a.name + " vs " + b.name);
-            // 分配颜色
-            a.send("START:COLOR:BLACK");
-            b.send("START:COLOR:WHITE");
+        String key() { return node + "/" + connId; }
 
-            // 启动两条转发线程
-            exec.submit(() -> forward(a, b));
-            exec.submit(() -> forward(b, a));
+        // 通知 home 节点把该连接的后续消息路由到本节点
+        void bind() {
+            if (closed) return;
+            sendFrame(node, ClusterLink.BIND, o -> o.writeLong(connId));
         }
 
-        private void forward(ClientHandler from, ClientHandler to) {
-            try {
-                String line;
-                // 循环读取阻塞直到收到对方发来的新行或对方关闭连接
-                while ((line = from.in.readLine()) != null) {
-                	/*
-                	 * 读取到每行后打印日志并调用 to.send(line) 
-                	 * 将原文中继给对方（服务器做的是“中继/转发”，
-                	 * 不会修改消息内容）
-                	 */
-                    System.out.println("[" + from.name + " -> " + to.name + "] " + line);
-                    to.send(line);
+        void sendRaw(byte[] b, int off, int len) {
+            if (closed) return;
+            if (!sendFrame(node, ClusterLink.DOWN, o -> { o.writeLong(connId); o.writeInt(len); o.write(b, off, len); })) closed = true;
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            remoteClients.remove(key());
+            sendFrame(node, ClusterLink.CLOSE, o -> o.writeLong(connId));
+        }
+    }
+
+    // 对局中的一方：连接可能因断线重连而被替换，令牌与颜色不变
+    private static class Seat {
+        final String name;
+        final String token;
+        final int color; // 1 black, 2 white
+        Conn conn;
+        // 断线期间棋谱被截断（悔棋/重置）到的最短长度，重连时不会补发少于此长度之前的棋步
+        int lowWater;
+        // 该方尚未得到答复的悔棋请求（撤后步数），-1 表示没有
+        int undoTarget = -1;
+        TimerWheel.Timeout expiry;
+
+        Seat(Conn conn, String token, int color) {
+            this.conn = conn;
+            this.name = conn.name;
+            this.token = token;
+            this.color = color;
+        }
+    }
+
+    // 一局对局：分配颜色、中继消息，并记录棋谱以便断线后增量同步与走棋计时
+    private class GameSession {
+        final Seat[] seats = new Seat[2];
+        // 服务器侧棋谱与行棋方：由转发的 MOVE / UNDO_ACCEPT / RESET 推导，存放在 SessionStore 槽位中
+        final SessionStore.Board board = boards.allocate();
+        boolean ended;
+        // 已分出胜负（服务器棋谱上成五或超时）后不再计时、不再接受棋步，直到悔棋或 RESET
+        boolean finished;
+        // 局号：开局为 0，每执行一次 RESET 加一；重置请求必须带当前局号
+        int game;
+        TimerWheel.Timeout turnClock;
+
+        GameSession(String id, Conn a, Conn b) {
+            // 令牌以会话 ID 开头，任一节点都能据此找到会话归属节点
+            seats[0] = new Seat(a, id + newToken(), 1);
+            seats[1] = new Seat(b, id + newToken(), 2);
+        }
+
+        int seatOf(String token) {
+            return seats[0].token.equals(token) ? 0 : 1;
+        }
+
+        void start() {
+            metrics.activeSessions.increment();
+            metrics.sessionsTotal.increment();
+            System.out.println("New game session: " + seats[0].name + " vs " + seats[1].name);
+            for (Seat s : seats) sessionsByToken.put(s.token, this);
+            // 分配颜色并发放会话令牌
+            for (int i = 0; i < 2; i++) {
+                Seat s = seats[i];
+                s.conn.seat = i;
+                s.conn.session = this;
+                if (s.conn instanceof RemoteClient) ((RemoteClient) s.conn).bind();
+                if (s.conn.closed) onDisconnect(s.conn);
+                s.conn.send("START:COLOR:" + (s.color == 1 ? "BLACK" : "WHITE"));
+                s.conn.send("SESSION:" + s.token + ":" + graceMillis / 1000);
+            }
+            synchronized (this) { restartClock(); }
+        }
+
+        /*
+         * 中继一行：[off, off+len) 为行内容，b[off+len] 为 '\n'，连同换行符原样转发给对方
+         * （服务器做的是“中继/转发”，不会修改消息内容）。
+         * readNanos：该行被读入的时刻，用于统计中继延迟。
+         * fromLink：在节点链路读取线程上调用，此时 b 归本方法所有，发送一律经 sendLater 交给线程池。
+         * 路由与记谱在会话锁内完成（同一会话的两个读取线程会在此竞争），发送与指标记录在锁外。
+         */
+        void relay(Conn from, byte[] b, int off, int len, long readNanos, boolean fromLink) {
+            int seat = from.seat;
+            Conn to;
+            // forward：原样转发给对方；reply 只发给发送方，broadcast 发给双方（依次在转发与 reply 之后发出）
+            String reply = null, reply2 = null, broadcast = null;
+            boolean forward = false;
+            synchronized (this) {
+                // 会话已结束（棋局槽位已回收）或该连接已被重连替换
+                if (ended || seats[seat].conn != from) return;
+                to = seats[1 - seat].conn;
+                int seq = sequencedMove(b, off, len);
+                if (LineFramer.equals(b, off, len, OP_SYNC_REQUEST)) {
+                    reply = syncLine(0);
+                } else if (seq >= 0) {
+                    if (acceptMove(seat, b, off, len)) {
+                        reply = "ACK:" + seq;
+                        forward = true;
+                        if (finished) broadcast = gameOverLine(seat);
+                    } else {
+                        // 拒绝：发送方回滚该步，再按服务器棋谱补齐
+                        reply = "NACK:" + seq;
+                        reply2 = syncLine(Math.min(seq, board.getMoveCount()));
+                    }
+                } else if (LineFramer.startsWith(b, off, len, OP_RESET)) {
+                    // 重置由服务器执行后向双方广播新局号；过期的请求只告知发送方
+                    if (acceptReset(b, off, len)) broadcast = "RESET:" + game;
+                    else reply = "RESET_STALE";
+                } else if (LineFramer.startsWith(b, off, len, OP_GAME_OVER)) {
+                    // 胜负只由服务器按自己的棋谱判定并广播，客户端发来的 GAME_OVER 一律丢弃
+                } else {
+                    boolean wasFinished = finished;
+                    broadcast = record(seat, b, off, len);
+                    forward = broadcast == null;
+                    // 旧格式 MOVE:x,y 成五：照常转发，再向双方广播结果
+                    if (finished && !wasFinished) broadcast = gameOverLine(seat);
                 }
-            } catch (IOException e) {
-                System.out.println("Forwarding stopped between " + from.name + " and " + to.name + ": " + e.getMessage());
             }
-            /*
-             * finally 块尝试向对方发送 "CHAT:对方已断开连接"（告知对方对端断线），
-             * 并关闭两个 socket（from.socket.close() / to.socket.close()）
-             * 以结束会话并释放资源。
-             */
-            finally {
+            if (logRelay) {
+                System.out.println("[" + from.name + " -> " + seats[1 - seat].name + "] "
+                        + new String(b, off, len, StandardCharsets.UTF_8));
+            }
+            // 对方处于断线宽限期时消息丢弃，棋步会在重连时通过 SYNC 补发
+            if (fromLink) {
+                if (forward && to != null) to.sendLater(b);
+                if (reply != null) from.sendLater(Conn.line(reply));
+                if (reply2 != null) from.sendLater(Conn.line(reply2));
+                if (broadcast != null) {
+                    from.sendLater(Conn.line(broadcast));
+                    if (to != null) to.sendLater(Conn.line(broadcast));
+                }
+            } else {
+                if (forward && to != null) to.sendRaw(b, off, len + 1);
+                if (reply != null) from.send(reply);
+                if (reply2 != null) from.send(reply2);
+                if (broadcast != null) {
+                    from.send(broadcast);
+                    if (to != null) to.send(broadcast);
+                }
+            }
+            metrics.message(Metrics.classify(b, off, len));
+            metrics.relayLatency.record(System.nanoTime() - readNanos);
+        }
+
+        // MOVE:<seq>:x,y 返回 seq；不是带序号的 MOVE（含旧格式 MOVE:x,y）返回 -1
+        private int sequencedMove(byte[] b, int off, int len) {
+            if (!LineFramer.startsWith(b, off, len, OP_MOVE)) return -1;
+            int colon = LineFramer.indexOf(b, off + OP_MOVE.length, off + len, (byte) ':');
+            return (colon < 0) ? -1 : LineFramer.parseInt(b, off + OP_MOVE.length, colon);
+        }
+
+        /*
+         * 校验并记录带序号的落子（调用方持有 this 锁）：序号必须等于服务器棋谱的当前步数，
+         * 且轮到该方、落点合法、对局未分出胜负。
+         */
+        private boolean acceptMove(int seat, byte[] b, int off, int len) {
+            int end = off + len;
+            int colon = LineFramer.indexOf(b, off + OP_MOVE.length, end, (byte) ':');
+            int seq = LineFramer.parseInt(b, off + OP_MOVE.length, colon);
+            int comma = LineFramer.indexOf(b, colon + 1, end, (byte) ',');
+            int x = LineFramer.parseInt(b, colon + 1, end);
+            int y = (comma < 0) ? -1 : LineFramer.parseInt(b, comma + 1, end);
+            int color = seats[seat].color;
+            if (finished || seq != board.getMoveCount() || board.getCurrentTurn() != color) return false;
+            if (x < 0 || y < 0 || !board.place(x, y, color)) return false;
+            if (board.checkWin(x, y)) finished = true;
+            restartClock();
+            return true;
+        }
+
+        /*
+         * 根据转发的消息维护服务器侧棋谱与回合计时（调用方持有 this 锁）；只看操作码字节。
+         * 悔棋由服务器执行后向双方广播结果（返回广播内容），客户端不再各自先行撤步；其余返回 null 原样转发。
+         * 悔棋的请求与同意都带撤后步数，只有与对方待决请求一致、且棋谱仍停在请求时的 UNDO_ACCEPT 才会执行。
+         */
+        private String record(int seat, byte[] b, int off, int len) {
+            if (LineFramer.startsWith(b, off, len, OP_MOVE)) {
+                int end = off + len;
+                int comma = LineFramer.indexOf(b, off + OP_MOVE.length, end, (byte) ',');
+                int x = LineFramer.parseInt(b, off + OP_MOVE.length, end);
+                int y = (comma < 0) ? -1 : LineFramer.parseInt(b, comma + 1, end);
+                // 旧格式 MOVE:x,y；非法格式或非法落点，仅中继不记录
+                if (x < 0 || y < 0 || !board.place(x, y, seats[seat].color)) return null;
+                if (board.checkWin(x, y)) finished = true;
+                restartClock();
+            } else if (LineFramer.startsWith(b, off, len, OP_UNDO_REQUEST)) {
+                // UNDO_REQUEST:<撤后步数>：记下请求后原样转发给对方
+                seats[seat].undoTarget = LineFramer.parseInt(b, off + OP_UNDO_REQUEST.length + 1, off + len);
+            } else if (LineFramer.startsWith(b, off, len, OP_UNDO_ACCEPT)) {
+                // UNDO_ACCEPT:<撤后步数>：必须答复对方待决的请求，且期间没有新的棋步，否则双方收到 UNDO_STALE
+                Seat requester = seats[1 - seat];
+                int target = LineFramer.parseInt(b, off + OP_UNDO_ACCEPT.length + 1, off + len);
+                boolean ok = target >= 0 && target == requester.undoTarget && board.getMoveCount() == target + 1;
+                requester.undoTarget = -1;
+                if (!ok) return "UNDO_STALE";
+                // 撤一手，双方按 UNDO:<撤后步数> 对齐到同一步数；撤掉的可能正是分出胜负的一手
+                board.undoLast();
+                finished = false;
+                truncated();
+                restartClock();
+                return "UNDO:" + board.getMoveCount();
+            } else if (LineFramer.startsWith(b, off, len, OP_UNDO_DENY)) {
+                seats[1 - seat].undoTarget = -1;
+            }
+            return null;
+        }
+
+        /*
+         * RESET:<局号>（调用方持有 this 锁）：局号必须等于当前局号，执行后局号加一。
+         * 双方同时发起、或请求在途中对局已被重置时，只有第一个请求生效，不会清掉新一局已走的棋步。
+         */
+        private boolean acceptReset(byte[] b, int off, int len) {
+            int g = LineFramer.parseInt(b, off + OP_RESET.length + 1, off + len);
+            if (g < 0 || g != game) return false;
+            game++;
+            board.reset();
+            finished = false;
+            for (Seat s : seats) s.undoTarget = -1;
+            truncated();
+            restartClock();
+            return true;
+        }
+
+        // seat 一方的落子在服务器棋谱上成五（调用方持有 this 锁）；在 ACK 与转发的棋步之后发给双方
+        private String gameOverLine(int seat) {
+            return "GAME_OVER:" + (seats[seat].color == 1 ? "BLACK" : "WHITE");
+        }
+
+        // SYNC:<base>:<Move.formatList>，只含 base 之后的棋步（调用方持有 this 锁）
+        private String syncLine(int base) {
+            int count = board.getMoveCount();
+            List<Move> tail = new ArrayList<>(count - base);
+            for (int i = base; i < count; i++) tail.add(new Move(board.moveX(i), board.moveY(i), board.moveColor(i)));
+            return "SYNC:" + base + ":" + Move.formatList(tail);
+        }
+
+        private void truncated() {
+            for (Seat s : seats) {
+                if (s.conn == null) s.lowWater = Math.min(s.lowWater, board.getMoveCount());
+            }
+        }
+
+        // 为当前行棋方重新开始计时；对局结束、未启用计时或行棋方断线时只取消（调用方持有 this 锁）
+        private void restartClock() {
+            if (turnClock != null) turnClock.cancel();
+            turnClock = null;
+            if (ended || finished || turnMillis <= 0 || seats[board.getCurrentTurn() - 1].conn == null) return;
+            final TimerWheel.Timeout[] self = new TimerWheel.Timeout[1];
+            self[0] = wheel.schedule(() -> onTurnTimeout(self[0]), turnMillis, TimeUnit.MILLISECONDS);
+            turnClock = self[0];
+        }
+
+        private void onTurnTimeout(TimerWheel.Timeout clock) {
+            String loser;
+            Conn[] conns = new Conn[2];
+            synchronized (this) {
+                // 已被新的计时替换（取消与到期竞争时）则忽略
+                if (clock != turnClock || finished || ended) return;
+                finished = true;
+                turnClock = null;
+                loser = (board.getCurrentTurn() == 1) ? "BLACK" : "WHITE";
+                conns[0] = seats[0].conn;
+                conns[1] = seats[1].conn;
+            }
+            metrics.turnTimeouts.increment();
+            System.out.println("Turn timeout in " + seats[0].name + " vs " + seats[1].name + ": " + loser + " loses");
+            // 在时间轮线程上执行：通知交给线程池发送
+            exec.execute(() -> {
+                for (Conn c : conns) {
+                    if (c == null) continue;
+                    c.send("TIMEOUT:" + loser);
+                    c.send("GAME_OVER:" + ("BLACK".equals(loser) ? "WHITE" : "BLACK"));
+                }
+            });
+        }
+
+        /*
+         * 连接断开不再直接结束对局：
+         * 进入宽限期，等待该方用会话令牌重连。
+         */
+        void onDisconnect(Conn conn) {
+            int seat = conn.seat;
+            Conn peer;
+            boolean over;
+            synchronized (this) {
+                Seat s = seats[seat];
+                // 已被重连替换的旧连接或已结束的会话不再处理
+                if (ended || s.conn != conn) return;
+                s.conn = null;
+                peer = seats[1 - seat].conn;
+                // 已分出胜负且双方都已离开：没有可恢复的对局，不再等待宽限期
+                over = finished && peer == null;
+                if (over) {
+                    end();
+                } else {
+                    s.lowWater = board.getMoveCount();
+                    s.expiry = wheel.schedule(() -> expire(seat), graceMillis, TimeUnit.MILLISECONDS);
+                    // 行棋方断线期间暂停走棋计时，重连后重新计时
+                    if (board.getCurrentTurn() == s.color) restartClock();
+                }
+            }
+            if (over) {
+                forget("Session ended");
+                return;
+            }
+            System.out.println(seats[seat].name + " disconnected, holding session for " + graceMillis / 1000 + "s");
+            if (peer != null) peer.send("PEER_DISCONNECTED:" + graceMillis / 1000);
+        }
+
+        private void expire(int seat) {
+            Conn peer;
+            synchronized (this) {
+                if (ended || seats[seat].conn != null) return;
+                peer = seats[1 - seat].conn;
+                end();
+            }
+            forget("Session expired");
+            if (peer == null) return;
+            // 在时间轮线程上执行：通知与关闭交给线程池
+            exec.execute(() -> {
                 try {
-                    to.send("CHAT:对方已断开连接");
+                    peer.send("CHAT:对方已断开连接");
+                    peer.send("SESSION_END");
                 } catch (Exception ex) { /* ignore */ }
-                try { from.socket.close(); } catch (IOException ignored) {}
-                try { to.socket.close(); } catch (IOException ignored) {}
+                peer.close();
+            });
+        }
+
+        /*
+         * 结束会话（调用方持有 this 锁）。会话只经此处结束，活跃会话数在这里且只在这里减一；
+         * 之后取消全部计时并回收棋局槽位，relay/resume 等入口看到 ended 即返回，不再访问槽位。
+         */
+        private void end() {
+            ended = true;
+            metrics.activeSessions.decrement();
+            for (Seat s : seats) {
+                if (s.expiry != null) s.expiry.cancel();
+            }
+            restartClock();
+            board.release();
+        }
+
+        // 会话结束后（不持锁）注销令牌
+        private void forget(String why) {
+            for (Seat s : seats) sessionsByToken.remove(s.token);
+            System.out.println(why + ": " + seats[0].name + " vs " + seats[1].name);
+        }
+
+        /**
+         * 用新连接接管某一方。known/hash 为客户端本地棋谱的步数与哈希：
+         * 前缀一致时只补发 known 之后的棋步，否则退回到断线期间的截断点（lowWater）或完整同步。
+         */
+        boolean resume(int seat, Conn conn, int known, long hash) {
+            Conn old, peer;
+            String sync;
+            int g;
+            Seat s = seats[seat];
+            synchronized (this) {
+                if (ended) return false;
+                old = s.conn;
+                if (s.expiry != null) s.expiry.cancel();
+                s.expiry = null;
+
+                int base;
+                int count = board.getMoveCount();
+                if (known >= 0 && known <= count && board.historyHash(known) == hash) {
+                    base = known;
+                } else if (old == null) {
+                    // 断线期间服务器确知的公共前缀
+                    base = Math.max(0, Math.min(known, s.lowWater));
+                } else {
+                    base = 0;
+                }
+                sync = syncLine(base);
+                g = game;
+                conn.seat = seat;
+                conn.session = this;
+                s.conn = conn;
+                peer = seats[1 - seat].conn;
+                if (board.getCurrentTurn() == s.color) restartClock();
             }
+            // 半开连接（服务器尚未察觉旧连接断开）：关闭旧连接，其读取线程退出时会被忽略
+            if (old != null) old.abort();
+            if (conn instanceof RemoteClient) ((RemoteClient) conn).bind();
+            conn.send("RESUMED:COLOR:" + (s.color == 1 ? "BLACK" : "WHITE") + ":" + g);
+            conn.send(sync);
+            if (peer != null) peer.send("PEER_RESUMED");
+            System.out.println(s.name + " resumed session, " + sync);
+            return true;
+        }
+    }
+
+    // gomoku.cluster=a@host:port,b@host:port
+    private static Map<String, InetSocketAddress> parseCluster(String spec) {
+        Map<String, InetSocketAddress> nodes = new LinkedHashMap<>();
+        if (spec == null || spec.trim().isEmpty()) return nodes;
+        for (String item : spec.split(",")) {
+            String[] idAddr = item.trim().split("@");
+            int colon = idAddr[1].lastIndexOf(':');
+            nodes.put(idAddr[0], new InetSocketAddress(idAddr[1].substring(0, colon), Integer.parseInt(idAddr[1].substring(colon + 1))));
         }
+        return nodes;
     }
 
     public static void main(String[] args) throws IOException {
         int port = 5000;
+        long graceSeconds = 60;
         if (args.length >= 1) port = Integer.parseInt(args[0]);
-        new Server(port).start();
+        if (args.length >= 2) graceSeconds = Long.parseLong(args[1]);
+        Map<String, InetSocketAddress> cluster = parseCluster(System.getProperty("gomoku.cluster"));
+        String node = System.getProperty("gomoku.node", "local");
+        if (!cluster.isEmpty() && !cluster.containsKey(node)) throw new IllegalArgumentException("gomoku.node not in gomoku.cluster: " + node);
+        new Server(port, graceSeconds * 1000, node, cluster).start();
     }
-}
\ No newline at end of file
+}
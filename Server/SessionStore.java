@@ -0,0 +1,197 @@
+package Server;
+
+import model.GameModel;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 服务器侧棋局的紧凑存储：每局占堆外内存中的一个定长槽位，不创建 GameModel、Move 等堆对象。
+ *
+ * 槽位布局（SLOT_BYTES 字节）：
+ * - [0, 4)   代数（槽位每次回收加一，用于发现过期的视图）
+ * - [4]      已走步数（0..225）
+ * - [5]      当前行棋方（1 黑 / 2 白）
+ * - [8, 65)  棋盘，每格 2 位，共 225 格
+ * - [72, 297) 棋谱，每步 1 字节（格子下标 y*SIZE+x），颜色由棋盘上该格的棋子得出
+ *
+ * 槽位按块（CHUNK_SLOTS 个一块）按需分配在直接缓冲区中，对局结束后归还到空闲栈复用。
+ * 对外只提供轻量视图 Board（只含缓冲区引用与偏移），操作与服务器用到的 GameModel 方法对应；
+ * 视图不是线程安全的，由持有它的会话加锁访问。
+ */
+public final class SessionStore {
+    public static final int SIZE = GameModel.SIZE;
+
+    private static final int GEN = 0, COUNT = 4, TURN = 5, BOARD = 8, MOVES = 72;
+    static final int SLOT_BYTES = 304;
+    private static final int CHUNK_SLOTS = 4096;
+    private static final int[][] DIRS = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    // 空闲槽位栈（全局槽号）
+    private int[] free = new int[CHUNK_SLOTS];
+    private int freeTop;
+    private int used;
+
+    /** 分配一个槽位并清空为新局面。 */
+    public synchronized Board allocate() {
+        if (freeTop == 0) grow();
+        int slot = free[--freeTop];
+        used++;
+        ByteBuffer chunk = chunks.get(slot / CHUNK_SLOTS);
+        int base = (slot % CHUNK_SLOTS) * SLOT_BYTES;
+        Board b = new Board(this, chunk, base, slot, chunk.getInt(base + GEN));
+        b.reset();
+        return b;
+    }
+
+    private void grow() {
+        int first = chunks.size() * CHUNK_SLOTS;
+        chunks.add(ByteBuffer.allocateDirect(CHUNK_SLOTS * SLOT_BYTES));
+        if (free.length < CHUNK_SLOTS) free = Arrays.copyOf(free, CHUNK_SLOTS);
+        // 低槽号在栈顶，优先复用
+        for (int i = CHUNK_SLOTS - 1; i >= 0; i--) free[freeTop++] = first + i;
+    }
+
+    synchronized void release(Board b) {
+        b.check();
+        b.chunk.putInt(b.base + GEN, b.gen + 1);
+        if (freeTop == free.length) free = Arrays.copyOf(free, free.length * 2);
+        free[freeTop++] = b.slot;
+        used--;
+    }
+
+    public synchronized int usedSlots() {
+        return used;
+    }
+
+    /** 已分配的堆外字节数。 */
+    public synchronized long reservedBytes() {
+        return (long) chunks.size() * CHUNK_SLOTS * SLOT_BYTES;
+    }
+
+    /** 某一槽位上的棋局视图。release() 之后再使用会抛出 IllegalStateException。 */
+    public static final class Board {
+        private final SessionStore store;
+        private final ByteBuffer chunk;
+        private final int base, slot, gen;
+
+        private Board(SessionStore store, ByteBuffer chunk, int base, int slot, int gen) {
+            this.store = store;
+            this.chunk = chunk;
+            this.base = base;
+            this.slot = slot;
+            this.gen = gen;
+        }
+
+        private void check() {
+            if (chunk.getInt(base + GEN) != gen) throw new IllegalStateException("session slot already released");
+        }
+
+        public static boolean inBounds(int x, int y) {
+            return x >= 0 && y >= 0 && x < SIZE && y < SIZE;
+        }
+
+        public int at(int x, int y) {
+            if (!inBounds(x, y)) return 0;
+            return cell(y * SIZE + x);
+        }
+
+        private int cell(int i) {
+            return (chunk.get(base + BOARD + (i >> 2)) >> ((i & 3) * 2)) & 3;
+        }
+
+        private void setCell(int i, int color) {
+            int p = base + BOARD + (i >> 2), shift = (i & 3) * 2;
+            chunk.put(p, (byte) ((chunk.get(p) & ~(3 << shift)) | (color << shift)));
+        }
+
+        public int getMoveCount() {
+            return chunk.get(base + COUNT) & 0xFF;
+        }
+
+        public int getCurrentTurn() {
+            return chunk.get(base + TURN);
+        }
+
+        /** 落子；越界或该点已有棋子时返回 false。 */
+        public boolean place(int x, int y, int color) {
+            check();
+            if (!inBounds(x, y)) return false;
+            int i = y * SIZE + x;
+            if (cell(i) != 0) return false;
+            int n = getMoveCount();
+            setCell(i, color);
+            chunk.put(base + MOVES + n, (byte) i);
+            chunk.put(base + COUNT, (byte) (n + 1));
+            chunk.put(base + TURN, (byte) (3 - color));
+            return true;
+        }
+
+        /** 撤销最后一步，行棋方交还给该步的一方。 */
+        public boolean undoLast() {
+            check();
+            int n = getMoveCount();
+            if (n == 0) return false;
+            int i = chunk.get(base + MOVES + n - 1) & 0xFF;
+            chunk.put(base + TURN, (byte) cell(i));
+            setCell(i, 0);
+            chunk.put(base + COUNT, (byte) (n - 1));
+            return true;
+        }
+
+        public void reset() {
+            check();
+            for (int p = COUNT; p < MOVES; p++) chunk.put(base + p, (byte) 0);
+            chunk.put(base + TURN, (byte) 1);
+        }
+
+        // 第 i 步的格子下标
+        private int moveCell(int i) {
+            return chunk.get(base + MOVES + i) & 0xFF;
+        }
+
+        public int moveX(int i) {
+            return moveCell(i) % SIZE;
+        }
+
+        public int moveY(int i) {
+            return moveCell(i) / SIZE;
+        }
+
+        public int moveColor(int i) {
+            return cell(moveCell(i));
+        }
+
+        /** 与 Move.historyHash 相同的前 n 步链式哈希。 */
+        public long historyHash(int n) {
+            long h = 17;
+            int count = Math.min(n, getMoveCount());
+            for (int i = 0; i < count; i++) {
+                int c = moveCell(i);
+                h = h * 1000003L + c * 4 + cell(c);
+            }
+            return h;
+        }
+
+        /** 五子连珠检测（基于 (x, y) 处的棋子）。 */
+        public boolean checkWin(int x, int y) {
+            int color = at(x, y);
+            if (color == 0) return false;
+            for (int[] d : DIRS) {
+                int n = 1;
+                for (int k = 1; at(x + d[0] * k, y + d[1] * k) == color; k++) n++;
+                for (int k = 1; at(x - d[0] * k, y - d[1] * k) == color; k++) n++;
+                if (n >= 5) return true;
+            }
+            return false;
+        }
+
+        /** 归还槽位；之后该视图不可再用。 */
+        public void release() {
+            store.release(this);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package Server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 哈希时间轮（Hashed Timing Wheel）：所有连接的握手超时、心跳、空闲回收与走棋计时共用一个线程。
+ *
+ * 要点：
+ * - 时间轴被切分成 wheelSize 个槽，每槽代表 tick 毫秒；超过一圈的任务记录剩余圈数（rounds）。
+ * - schedule/cancel 只把节点放入无锁队列，时间轮线程在每个 tick 开始时把它们挂入/摘出槽位，
+ *   调用方线程与时间轮线程都是 O(1)，与当前定时任务数无关。
+ * - 到期任务在时间轮线程上执行，必须短小且不能阻塞（阻塞工作应提交给其他线程池）。
+ */
+public final class TimerWheel {
+    private static final int ST_INIT = 0, ST_CANCELLED = 1, ST_EXPIRED = 2;
+
+    private final long tickNanos;
+    private final int mask;
+    private final Bucket[] wheel;
+    private final Queue<Timeout> pendingAdds = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> pendingCancels = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingCount = new AtomicLong();
+    private final Thread worker;
+    private final long startNanos;
+    private volatile boolean running = true;
+    private long tick;
+
+    public TimerWheel(long tickMillis, int wheelSize, String threadName) {
+        if (Integer.bitCount(wheelSize) != 1) throw new IllegalArgumentException("wheelSize must be a power of two");
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.mask = wheelSize - 1;
+        this.wheel = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) wheel[i] = new Bucket();
+        this.startNanos = System.nanoTime();
+        this.worker = new Thread(this::run, threadName);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /** 安排 task 在 delay 之后于时间轮线程上执行；返回的 Timeout 可用于取消。 */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() - startNanos + unit.toNanos(Math.max(0, delay));
+        Timeout t = new Timeout(this, task, deadline);
+        pendingCount.incrementAndGet();
+        pendingAdds.add(t);
+        return t;
+    }
+
+    /** 当前尚未到期且未取消的任务数。 */
+    public long pending() {
+        return pendingCount.get();
+    }
+
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long next = (tick + 1) * tickNanos;
+            long sleep = next - (System.nanoTime() - startNanos);
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    if (!running) return;
+                }
+            }
+            processCancels();
+            transferAdds();
+            wheel[(int) (tick & mask)].expire();
+            tick++;
+        }
+    }
+
+    private void transferAdds() {
+        // 限制单 tick 的搬运量，避免突发的大量调度拖慢到期处理
+        for (int i = 0; i < 100_000; i++) {
+            Timeout t = pendingAdds.poll();
+            if (t == null) return;
+            if (t.state.get() != ST_INIT) continue;
+            long ticks = t.deadline / tickNanos;
+            t.rounds = (ticks - tick) / wheel.length;
+            long slot = Math.max(ticks, tick);
+            wheel[(int) (slot & mask)].add(t);
+        }
+    }
+
+    private void processCancels() {
+        Timeout t;
+        while ((t = pendingCancels.poll()) != null) {
+            if (t.bucket != null) t.bucket.remove(t);
+        }
+    }
+
+    /** 定时任务句柄。 */
+    public static final class Timeout {
+        private final TimerWheel owner;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+        long rounds;
+        Timeout prev, next;
+        Bucket bucket;
+
+        Timeout(TimerWheel owner, Runnable task, long deadline) {
+            this.owner = owner;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /** 取消任务；任务已执行或已取消时返回 false。 */
+        public boolean cancel() {
+            if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) return false;
+            owner.pendingCount.decrementAndGet();
+            owner.pendingCancels.add(this);
+            return true;
+        }
+
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        void expire() {
+            if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) return;
+            owner.pendingCount.decrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable e) {
+                System.err.println("Timer task failed: " + e);
+            }
+        }
+    }
+
+    // 槽位：双向链表，支持 O(1) 插入与摘除
+    private static final class Bucket {
+        Timeout head, tail;
+
+        void add(Timeout t) {
+            t.bucket = this;
+            if (head == null) {
+                head = tail = t;
+            } else {
+                tail.next = t;
+                t.prev = tail;
+                tail = t;
+            }
+        }
+
+        void remove(Timeout t) {
+            if (t.bucket != this) return;
+            if (t.prev != null) t.prev.next = t.next; else head = t.next;
+            if (t.next != null) t.next.prev = t.prev; else tail = t.prev;
+            t.prev = t.next = null;
+            t.bucket = null;
+        }
+
+        void expire() {
+            Timeout t = head;
+            while (t != null) {
+                Timeout next = t.next;
+                if (t.rounds <= 0) {
+                    remove(t);
+                    t.expire();
+                } else if (t.state.get() == ST_CANCELLED) {
+                    remove(t);
+                } else {
+                    t.rounds--;
+                }
+                t = next;
+            }
+        }
+    }
+}
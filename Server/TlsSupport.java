@@ -0,0 +1,117 @@
+package Server;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 服务器侧 TLS：在已接受的 TCP 连接上叠加 SSLSocket，握手放在独立的有界线程池中完成，
+ * 握手成功后才交给 serve()，中继与心跳所在的线程池不会被握手的计算或慢客户端拖住。
+ *
+ * - 握手池：gomoku.tls.handshakeThreads 个线程（默认核数）+ gomoku.tls.handshakeQueue 长度的队列（默认 256），
+ *   排满时直接关闭新连接（计入 gomoku_tls_handshake_rejected_total），而不是无限堆积；
+ * - 握手超时沿用 gomoku.handshakeSeconds（作为握手期间的读超时）；
+ * - 会话恢复：服务器会话缓存（gomoku.tls.sessionCache 条，默认 20000，gomoku.tls.sessionTimeout 秒，默认 86400），
+ *   TLS 1.3 下 JDK 默认以无状态会话票据恢复；客户端在重连时复用同一个 SSLContext 即可省去完整握手。
+ *
+ * 密钥库：gomoku.tls.keystore（PKCS12，可用 scripts/tls-local.sh 生成本机自签名证书），口令 gomoku.tls.password。
+ */
+final class TlsSupport {
+    private final SSLSocketFactory factory;
+    private final ThreadPoolExecutor pool;
+    private final int handshakeTimeoutMillis;
+    private final Metrics metrics;
+
+    private TlsSupport(SSLContext ctx, int threads, int queue, int handshakeTimeoutMillis, Metrics metrics) {
+        this.factory = ctx.getSocketFactory();
+        this.handshakeTimeoutMillis = handshakeTimeoutMillis;
+        this.metrics = metrics;
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queue), r -> {
+            Thread t = new Thread(r, "tls-handshake");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** 按系统属性创建；未设置 gomoku.tls.keystore 时返回 null（明文）。 */
+    static TlsSupport fromProperties(long handshakeMillis, Metrics metrics) throws IOException {
+        String keystore = System.getProperty("gomoku.tls.keystore");
+        if (keystore == null) return null;
+        char[] password = System.getProperty("gomoku.tls.password", "changeit").toCharArray();
+        try {
+            KeyStore ks = KeyStore.getInstance("PKCS12");
+            try (InputStream in = Files.newInputStream(Paths.get(keystore))) {
+                ks.load(in, password);
+            }
+            KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            kmf.init(ks, password);
+            SSLContext ctx = SSLContext.getInstance("TLS");
+            ctx.init(kmf.getKeyManagers(), null, null);
+            SSLSessionContext sessions = ctx.getServerSessionContext();
+            sessions.setSessionCacheSize(Integer.getInteger("gomoku.tls.sessionCache", 20000));
+            sessions.setSessionTimeout(Integer.getInteger("gomoku.tls.sessionTimeout", 86400));
+            int threads = Integer.getInteger("gomoku.tls.handshakeThreads", Runtime.getRuntime().availableProcessors());
+            int queue = Integer.getInteger("gomoku.tls.handshakeQueue", 256);
+            return new TlsSupport(ctx, threads, queue, (int) handshakeMillis, metrics);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("cannot load TLS keystore " + keystore + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 在握手池中完成 sock 上的 TLS 握手，成功后以 SSLSocket 调用 onReady（仍在握手线程上，调用方应尽快转交）。
+     * 池已满或握手失败时关闭连接。
+     */
+    void handshake(Socket sock, Consumer<Socket> onReady) {
+        try {
+            pool.execute(() -> {
+                long start = System.nanoTime();
+                SSLSocket ssl = null;
+                try {
+                    sock.setTcpNoDelay(true);
+                    ssl = (SSLSocket) factory.createSocket(sock, null, sock.getPort(), true);
+                    ssl.setUseClientMode(false);
+                    ssl.setSoTimeout(handshakeTimeoutMillis);
+                    ssl.startHandshake();
+                    ssl.setSoTimeout(0);
+                } catch (IOException e) {
+                    metrics.tlsHandshakeFailures.increment();
+                    System.err.println("TLS handshake failed: " + sock.getRemoteSocketAddress() + ": " + e.getMessage());
+                    close(ssl != null ? ssl : sock);
+                    return;
+                }
+                metrics.tlsHandshakes.increment();
+                metrics.tlsHandshakeTime.record(System.nanoTime() - start);
+                onReady.accept(ssl);
+            });
+        } catch (RejectedExecutionException e) {
+            metrics.tlsHandshakeRejected.increment();
+            close(sock);
+        }
+    }
+
+    int queuedHandshakes() {
+        return pool.getQueue().size();
+    }
+
+    private static void close(Socket s) {
+        try {
+            s.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package Server;
+
+/**
+ * 令牌桶限流：每秒补充 rate 个令牌，最多积攒 burst 个，每条消息消耗一个。
+ * 只由单个线程（该连接的读取线程）使用，不加锁。
+ */
+final class TokenBucket {
+    private final double perNano;
+    private final double burst;
+    private double tokens;
+    private long last;
+
+    TokenBucket(double rate, int burst) {
+        this.perNano = rate / 1e9;
+        this.burst = burst;
+        this.tokens = burst;
+        this.last = System.nanoTime();
+    }
+
+    boolean tryAcquire(long now) {
+        tokens = Math.min(burst, tokens + (now - last) * perNano);
+        last = now;
+        if (tokens < 1) return false;
+        tokens -= 1;
+        return true;
+    }
+}
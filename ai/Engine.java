@@ -0,0 +1,241 @@
+package ai;
+
+import model.GameModel;
+import model.PatternTable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 搜索引擎：迭代加深的 alpha-beta（negamax）搜索 + 连续冲四（VCF）必胜检测。
+ *
+ * - 候选点：已有棋子周围 2 格内的空点，按 PatternTable 查出的进攻/防守棋型分值排序，只取前 width 个；
+ *   己方能成五时只考虑成五点，对方能成五时只考虑挡点。
+ * - 叶子估值：GameModel.evaluate（棋型查表）。
+ * - 引擎对象不是线程安全的，每个线程各用一个；搜索时直接在传入的 GameModel 上试走（makeMove/unmakeMove），返回前恢复原状。
+ */
+public class Engine {
+    public static final int WIN = 1_000_000;
+    private static final int INF = Integer.MAX_VALUE / 2;
+    private static final int N = GameModel.SIZE;
+
+    private final int maxDepth;
+    private final int width;
+
+    private long deadline;
+    private boolean aborted;
+    private long nodes;
+
+    public Engine(int maxDepth, int width) {
+        this.maxDepth = maxDepth;
+        this.width = width;
+    }
+
+    /** 搜索结果：最佳着法、分值（color 视角）、完成的深度与节点数。 */
+    public static final class Result {
+        public final int x, y, score, depth;
+        public final long nodes;
+
+        Result(int x, int y, int score, int depth, long nodes) {
+            this.x = x;
+            this.y = y;
+            this.score = score;
+            this.depth = depth;
+            this.nodes = nodes;
+        }
+
+        @Override
+        public String toString() {
+            return x + "," + y + " score=" + score + " depth=" + depth;
+        }
+    }
+
+    /**
+     * 为 color 搜索最佳着法。budgetNanos <= 0 表示不限时（只受 maxDepth 限制）；
+     * 超时或所在线程被中断时返回最后一次完整迭代的结果。棋盘已满时返回 null。
+     */
+    public Result search(GameModel m, int color, long budgetNanos) {
+        return search(m, color, budgetNanos, maxDepth);
+    }
+
+    public Result search(GameModel m, int color, long budgetNanos, int depthLimit) {
+        return search(m, color, budgetNanos, depthLimit, candidates(m, color, width));
+    }
+
+    /**
+     * 以与 search 相同的深度为 color 评估一个指定着法（根节点只有这一手）；(x, y) 必须是空点。
+     * 用于把实战着法与最佳着法放在同一搜索深度上比较。
+     */
+    public Result searchMove(GameModel m, int color, int x, int y, long budgetNanos, int depthLimit) {
+        List<int[]> root = new ArrayList<>(1);
+        root.add(new int[] {x, y});
+        return search(m, color, budgetNanos, depthLimit, root);
+    }
+
+    private Result search(GameModel m, int color, long budgetNanos, int depthLimit, List<int[]> cands) {
+        deadline = budgetNanos > 0 ? System.nanoTime() + budgetNanos : Long.MAX_VALUE;
+        aborted = false;
+        nodes = 0;
+        if (cands.isEmpty()) return null;
+        int[] best = cands.get(0);
+        int bestScore = -INF, doneDepth = 0;
+        for (int depth = 1; depth <= depthLimit; depth++) {
+            int alpha = -INF, iterBest = -INF;
+            int[] iterMove = null;
+            for (int[] c : cands) {
+                m.makeMove(c[0], c[1], color);
+                int v = m.checkWin(c[0], c[1]) ? WIN : -negamax(m, 3 - color, depth - 1, -INF, -alpha, 1);
+                m.unmakeMove();
+                if (aborted) break;
+                if (v > iterBest) {
+                    iterBest = v;
+                    iterMove = c;
+                }
+                if (v > alpha) alpha = v;
+            }
+            if (aborted || iterMove == null) break;
+            best = iterMove;
+            bestScore = iterBest;
+            doneDepth = depth;
+            if (Math.abs(bestScore) >= WIN - maxDepth) break;
+            // 上一轮最佳着法排到最前，提高下一轮剪枝效率
+            cands.remove(best);
+            cands.add(0, best);
+        }
+        if (doneDepth == 0) bestScore = m.evaluate(color);
+        return new Result(best[0], best[1], bestScore, doneDepth, nodes);
+    }
+
+    private int negamax(GameModel m, int color, int depth, int alpha, int beta, int ply) {
+        // 每 1024 个节点检查一次时限与线程中断（被中断时按超时处理，返回上一轮完整迭代的结果）
+        if ((++nodes & 1023) == 0 && (System.nanoTime() > deadline || Thread.currentThread().isInterrupted())) aborted = true;
+        if (aborted) return 0;
+        if (depth == 0) return m.evaluate(color);
+        List<int[]> cands = candidates(m, color, width);
+        if (cands.isEmpty()) return 0;
+        int best = -INF;
+        for (int[] c : cands) {
+            m.makeMove(c[0], c[1], color);
+            int v = m.checkWin(c[0], c[1]) ? WIN - ply : -negamax(m, 3 - color, depth - 1, -beta, -alpha, ply + 1);
+            m.unmakeMove();
+            if (aborted) return 0;
+            if (v > best) best = v;
+            if (v > alpha) alpha = v;
+            if (alpha >= beta) break;
+        }
+        return best;
+    }
+
+    /**
+     * 连续冲四必胜（VCF）：color 每步都走出“四”，对方只能挡在唯一的成五点上，
+     * maxDepth 步内成五或形成活四即为必胜。返回第一步着法，不存在时返回 null。
+     */
+    public int[] findVcf(GameModel m, int color, int maxDepth) {
+        if (!fivePoints(m, 3 - color).isEmpty()) {
+            // 对方已有成五点：除非己方能先成五，否则不存在冲四胜
+            List<int[]> mine = fivePoints(m, color);
+            return mine.isEmpty() ? null : mine.get(0);
+        }
+        return vcf(m, color, maxDepth);
+    }
+
+    private int[] vcf(GameModel m, int color, int depth) {
+        boolean[] near = nearStones(m, 1);
+        for (int i = 0; i < N * N; i++) {
+            if (!near[i]) continue;
+            int x = i % N, y = i / N;
+            if (maxPattern(m, x, y, color) < PatternTable.FOUR) continue;
+            m.makeMove(x, y, color);
+            boolean win = m.checkWin(x, y);
+            if (!win) {
+                List<int[]> threats = fivePoints(m, color);
+                if (threats.size() >= 2) {
+                    win = true;
+                } else if (threats.size() == 1 && depth > 1) {
+                    int[] block = threats.get(0);
+                    m.makeMove(block[0], block[1], 3 - color);
+                    // 挡点本身成五或形成对方的四（需先应对）时，这条冲四线不成立
+                    if (!m.checkWin(block[0], block[1]) && fivePoints(m, 3 - color).isEmpty()) {
+                        win = vcf(m, color, depth - 1) != null;
+                    }
+                    m.unmakeMove();
+                }
+            }
+            m.unmakeMove();
+            if (win) return new int[] {x, y};
+        }
+        return null;
+    }
+
+    /** color 落子即可成五的所有空点。 */
+    public List<int[]> fivePoints(GameModel m, int color) {
+        List<int[]> pts = new ArrayList<>();
+        boolean[] near = nearStones(m, 1);
+        for (int i = 0; i < N * N; i++) {
+            if (near[i] && maxPattern(m, i % N, i / N, color) == PatternTable.FIVE) pts.add(new int[] {i % N, i / N});
+        }
+        return pts;
+    }
+
+    private static int maxPattern(GameModel m, int x, int y, int color) {
+        int best = PatternTable.NONE;
+        for (int d = 0; d < 4; d++) best = Math.max(best, m.patternIfPlaced(x, y, color, d));
+        return best;
+    }
+
+    /**
+     * 候选着法（按优先级降序，最多 limit 个）。空棋盘返回天元。
+     * 己方可成五时只返回成五点；对方可成五时只返回挡点。
+     */
+    public List<int[]> candidates(GameModel m, int color, int limit) {
+        List<int[]> out = new ArrayList<>();
+        if (m.getMoveCount() == 0) {
+            out.add(new int[] {N / 2, N / 2});
+            return out;
+        }
+        boolean[] near = nearStones(m, 2);
+        int opp = 3 - color;
+        List<int[]> blocks = new ArrayList<>();
+        List<int[]> scored = new ArrayList<>();
+        for (int i = 0; i < N * N; i++) {
+            if (!near[i]) continue;
+            int x = i % N, y = i / N;
+            int attack = 0, defense = 0, myMax = 0, oppMax = 0;
+            for (int d = 0; d < 4; d++) {
+                int a = m.patternIfPlaced(x, y, color, d);
+                int b = m.patternIfPlaced(x, y, opp, d);
+                attack += PatternTable.score(a);
+                defense += PatternTable.score(b);
+                myMax = Math.max(myMax, a);
+                oppMax = Math.max(oppMax, b);
+            }
+            if (myMax == PatternTable.FIVE) {
+                out.add(new int[] {x, y});
+                return out;
+            }
+            if (oppMax == PatternTable.FIVE) blocks.add(new int[] {x, y});
+            scored.add(new int[] {x, y, attack + defense * 9 / 10});
+        }
+        if (!blocks.isEmpty()) return blocks;
+        scored.sort((p, q) -> Integer.compare(q[2], p[2]));
+        for (int i = 0; i < scored.size() && i < limit; i++) out.add(scored.get(i));
+        return out;
+    }
+
+    // 已有棋子周围 r 格内的空点
+    private static boolean[] nearStones(GameModel m, int r) {
+        boolean[] near = new boolean[N * N];
+        for (int y = 0; y < N; y++) {
+            for (int x = 0; x < N; x++) {
+                if (m.at(x, y) == 0) continue;
+                for (int dy = -r; dy <= r; dy++) {
+                    for (int dx = -r; dx <= r; dx++) {
+                        int nx = x + dx, ny = y + dy;
+                        if (GameModel.inBounds(nx, ny) && m.at(nx, ny) == 0) near[ny * N + nx] = true;
+                    }
+                }
+            }
+        }
+        return near;
+    }
+}
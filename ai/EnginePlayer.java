@@ -0,0 +1,40 @@
+package ai;
+
+import model.GameModel;
+
+/** 基于 Engine 的棋手，参数写法如 "depth=4,width=12"。 */
+public class EnginePlayer implements Player {
+    private final String name;
+    private final Engine engine;
+
+    public EnginePlayer(String name, int depth, int width) {
+        this.name = name;
+        this.engine = new Engine(depth, width);
+    }
+
+    /** 解析 "depth=4,width=12"（缺省 depth=4, width=10）。 */
+    public static EnginePlayer parse(String name, String spec) {
+        int depth = 4, width = 10;
+        for (String kv : spec.split(",")) {
+            String[] p = kv.trim().split("=", 2);
+            if (p.length != 2) continue;
+            switch (p[0]) {
+                case "depth": depth = Integer.parseInt(p[1]); break;
+                case "width": width = Integer.parseInt(p[1]); break;
+                default: throw new IllegalArgumentException("unknown engine option: " + p[0]);
+            }
+        }
+        return new EnginePlayer(name, depth, width);
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public int[] selectMove(GameModel model, int color, long budgetNanos) {
+        Engine.Result r = engine.search(model, color, budgetNanos);
+        return r == null ? null : new int[] {r.x, r.y};
+    }
+}
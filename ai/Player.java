@@ -0,0 +1,15 @@
+package ai;
+
+import model.GameModel;
+
+/**
+ * 可插拔的棋手接口（引擎对局、锦标赛等无界面场景使用）。
+ *
+ * 实现可以在 model 上试走（makeMove/unmakeMove），但返回前必须恢复原状；每个实例只由一个线程使用。
+ */
+public interface Player {
+    String name();
+
+    /** 为 color 选择着法，返回 {x, y}；budgetNanos 为本步可用时间。 */
+    int[] selectMove(GameModel model, int color, long budgetNanos);
+}
@@ -1,5 +1,7 @@
 package client;
 
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * 客户端入口：支持在线模式（连接服务器）与离线模式（本地双人）。
@@ -10,9 +12,20 @@ package client;
  *
  * 2) 离线（本地双人）:
  *    java client.ClientApp offline [playerName]
+ *
+ * 在线模式默认在后台创建界面，与连接服务器、NAME 握手同时进行；
+ * 加 --sync-view 退回先同步创建界面再连接（用于对比启动耗时，见 -Dgomoku.startupTrace）。
  */
 public class ClientApp {
     public static void main(String[] args) {
+        controller.StartupTrace.mark("main");
+        boolean syncView = false;
+        List<String> rest = new ArrayList<>();
+        for (String a : args) {
+            if (a.equals("--sync-view")) syncView = true;
+            else rest.add(a);
+        }
+        args = rest.toArray(new String[0]);
         if (args.length < 1) {
             System.out.println("用法:");
             System.out.println("  在线: java client.ClientApp <serverHost> <port> <playerName>");
@@ -39,7 +52,7 @@ public class ClientApp {
         String name = args[2];
 
         model.GameModel model = new model.GameModel();
-        view.GameView view = new view.GameView();
+        view.GameView view = new view.GameView(!syncView, () -> controller.StartupTrace.mark("first-frame"));
         new controller.GameController(model, view, host, port, name);
     }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package controller;
 
 import model.GameModel;
 import model.Move;
+import model.VariationNode;
 import view.GameView;
 
 import javax.swing.*;
@@ -13,6 +14,12 @@ import java.util.List;
 
 /**
  * 控制器（Controller）。负责把 View 的用户操作转为 Model 调用、并处理网络通信。
+ *
+ * 落子带序号（MOVE:<seq>:x,y，seq 为落子前的步数）并立即在本地生效，服务器校验后回 ACK:<seq>，
+ * 拒绝时回 NACK:<seq> 并随后发送 SYNC，本地回滚该步再按服务器棋谱补齐。
+ * 悔棋与重置由服务器执行后广播（UNDO:<撤后步数> / RESET），双方收到后才改动本地棋盘；
+ * 悔棋请求与同意都带撤后步数（UNDO_REQUEST:<n> / UNDO_ACCEPT:<n>），与棋步交错而失效时服务器回 UNDO_STALE。
+ * 除网络线程应答 PING 外，控制器状态只在 EDT 上读写。
  */
 public class GameController {
     private final GameModel model;
@@ -20,10 +27,18 @@ public class GameController {
 
     private Socket socket;
     private BufferedReader in;
-    private PrintWriter out;
+    private volatile PrintWriter out;
+
+    // 断线重连：START 后由 Server 发放的会话令牌与宽限期
+    private volatile String sessionToken;
+    private volatile long graceMillis;
 
     private int myColor = 0; // 1 black, 2 white
     private boolean myTurn = false;
+    // 乐观落子：已在本地棋盘生效、等待服务器 ACK 的棋步序号（即落子前的步数），-1 表示没有
+    private int pendingSeq = -1;
+    // 服务器局号：开局为 0，随 RESET:<局号> 广播更新；发起重置时带上，过期的请求由服务器拒绝
+    private int game;
     private final String playerName;
     private final String host;
     private final int port;
@@ -64,7 +79,8 @@ public class GameController {
                     case "move":
                     case "undo":
                     case "reset":
-                    case "turn": {
+                    case "turn":
+                    case "branch": { // branch：切换到棋谱树上的其他节点（复盘/变化）
                         view.updateBoard(model);
                         break;
                     }
@@ -82,23 +98,79 @@ public class GameController {
     private void connectToServer() {
         new Thread(() -> {
             try {
-                socket = new Socket(host, port);
-                in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
-                out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"), true);
-                out.println("NAME:" + playerName);
+                openConnection("NAME:" + playerName);
+                StartupTrace.mark("connected");
                 view.appendChat("已连接到服务器 " + host + ":" + port);
-                // listen loop
-                String line;
-                while ((line = in.readLine()) != null) {
-                    final String msg = line;
-                    SwingUtilities.invokeLater(() -> handleServerMessage(msg));
-                }
             } catch (IOException e) {
                 view.appendChat("与服务器连接异常: " + e.getMessage());
+                return;
+            }
+            // listen loop：连接断开后若持有会话令牌则在宽限期内尝试重连
+            while (true) {
+                try {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        final String msg = line;
+                        // 心跳直接在网络线程应答，不经过 EDT
+                        if (msg.equals("PING")) {
+                            PrintWriter w = out;
+                            if (w != null) w.println("PONG");
+                            continue;
+                        }
+                        // 会话失效需在网络线程立即生效，避免断开后仍尝试重连
+                        if (msg.equals("RESUME_FAILED") || msg.equals("SESSION_END")) sessionToken = null;
+                        SwingUtilities.invokeLater(() -> handleServerMessage(msg));
+                    }
+                    view.appendChat("与服务器的连接已断开。");
+                } catch (IOException e) {
+                    view.appendChat("与服务器连接异常: " + e.getMessage());
+                }
+                out = null;
+                if (sessionToken == null || !reconnect()) return;
             }
         }).start();
     }
 
+    private void openConnection(String hello) throws IOException {
+        if (TlsClient.enabled()) {
+            socket = TlsClient.connect(TlsClient.sharedContext(), host, port);
+        } else {
+            socket = new Socket(host, port);
+            // 关闭 Nagle：乐观落子后的 MOVE 是小包，不应等前一个包（如 PONG）被确认才发出
+            socket.setTcpNoDelay(true);
+        }
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+        PrintWriter w = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"), true);
+        w.println(hello);
+        out = w;
+    }
+
+    // 在宽限期内以退避间隔重连，并告知服务器本地已知的棋步数与棋谱哈希
+    private boolean reconnect() {
+        try { socket.close(); } catch (IOException ignored) {}
+        long deadline = System.currentTimeMillis() + graceMillis;
+        long backoff = 500;
+        view.appendChat("正在尝试重连...");
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                List<Move> moves = model.getMoves();
+                openConnection("RESUME:" + sessionToken + ":" + moves.size() + ":"
+                        + Move.formatHash(Move.historyHash(moves, moves.size())));
+                return true;
+            } catch (IOException e) {
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    return false;
+                }
+                backoff = Math.min(backoff * 2, 5000);
+            }
+        }
+        view.appendChat("重连超时，对局已结束。");
+        sessionToken = null;
+        return false;
+    }
+
     private void handleServerMessage(String line) {
         if (line.startsWith("START:COLOR:")) {
             String c = line.substring("START:COLOR:".length());
@@ -110,54 +182,137 @@ public class GameController {
                 view.appendChat("游戏开始，你是白方（后手）。");
             }
             model.reset();
+            game = 0;
+            StartupTrace.mark("paired");
+            return;
+        }
+        if (line.startsWith("SESSION:")) {
+            // SESSION:<token>:<graceSeconds>
+            String[] p = line.split(":");
+            sessionToken = p[1];
+            graceMillis = Long.parseLong(p[2]) * 1000;
+            return;
+        }
+        if (line.startsWith("RESUMED:COLOR:")) {
+            // RESUMED:COLOR:<BLACK|WHITE>:<局号>
+            String[] p = line.split(":");
+            myColor = "BLACK".equalsIgnoreCase(p[2]) ? 1 : 2;
+            if (p.length > 3) game = Integer.parseInt(p[3]);
+            view.appendChat("已重连，正在同步棋局...");
+            return;
+        }
+        if (line.startsWith("SYNC:")) {
+            applySync(line);
+            return;
+        }
+        if (line.equals("RESUME_FAILED")) {
+            view.appendChat("重连失败，对局已失效。");
+            return;
+        }
+        if (line.equals("SESSION_END")) {
+            view.appendChat("对局会话已结束。");
+            return;
+        }
+        if (line.startsWith("PEER_DISCONNECTED:")) {
+            view.appendChat("对方断线，等待其在 " + line.substring("PEER_DISCONNECTED:".length()) + " 秒内重连...");
+            return;
+        }
+        if (line.equals("PEER_RESUMED")) {
+            view.appendChat("对方已重连。");
             return;
         }
         if (line.startsWith("CHAT:")) {
             view.appendChat("对方: " + line.substring(5));
             return;
         }
+        if (line.startsWith("CHAT_REJECTED:")) {
+            // 服务器拒绝转发自己的聊天：TOO_LONG 超长 / RATE 发言过快
+            boolean tooLong = line.endsWith("TOO_LONG");
+            view.appendChat(tooLong ? "消息过长，未发送。" : "发言过于频繁，部分消息未发送。");
+            return;
+        }
+        if (line.startsWith("CHAT_DROPPED:")) {
+            view.appendChat("（网络拥塞，省略了对方的 " + line.substring("CHAT_DROPPED:".length()) + " 条聊天消息）");
+            return;
+        }
+        if (line.startsWith("ACK:")) {
+            int seq = Integer.parseInt(line.substring(4));
+            if (seq == pendingSeq) pendingSeq = -1;
+            return;
+        }
+        if (line.startsWith("NACK:")) {
+            // 服务器拒绝了乐观落子：回滚到该步之前，随后的 SYNC 会补齐服务器棋谱
+            int seq = Integer.parseInt(line.substring(5));
+            while (model.getMoveCount() > seq) model.undoLast();
+            if (seq == pendingSeq) pendingSeq = -1;
+            view.appendChat("落子未被服务器接受，已回退。");
+            return;
+        }
+        if (line.startsWith("UNDO:")) {
+            int n = Integer.parseInt(line.substring(5));
+            boolean undone = false;
+            while (model.getMoveCount() > n) undone = model.undoLast();
+            pendingSeq = -1;
+            myTurn = model.getCurrentTurn() == myColor;
+            view.appendChat(undone ? "悔棋生效，当前共 " + n + " 步。" : "悔棋：棋局已是 " + n + " 步。");
+            return;
+        }
         if (line.startsWith("MOVE:")) {
+            // MOVE:<seq>:x,y（旧格式 MOVE:x,y 没有序号）
             String body = line.substring(5);
+            int colon = body.indexOf(':');
+            if (colon >= 0) {
+                int seq = Integer.parseInt(body.substring(0, colon));
+                body = body.substring(colon + 1);
+                if (seq != model.getMoveCount()) {
+                    // 与服务器棋谱不一致：请求完整同步
+                    PrintWriter w = out;
+                    if (w != null) w.println("SYNC_REQUEST");
+                    return;
+                }
+            }
             String[] p = body.split(",");
             int x = Integer.parseInt(p[0]), y = Integer.parseInt(p[1]);
             int color = (myColor == 1) ? 2 : 1; // 对手颜色
             model.place(x, y, color);
             myTurn = (color != myColor);
-            if (model.checkWin(x, y)) {
-                view.appendChat("对方在 " + x + "," + y + " 获胜。");
-                view.showInfo("对方获胜。");
-            }
+            if (model.checkWin(x, y)) view.appendChat("对方在 " + x + "," + y + " 成五。");
             return;
         }
-        if (line.equals("UNDO_REQUEST")) {
-            // 对方请求悔棋：在本地提示并在同意时本地撤步并通知对方
+        if (line.startsWith("UNDO_REQUEST:")) {
+            // 对方请求悔棋到 target 步：同意时带上同一步数，由服务器核对后执行撤步并向双方广播 UNDO:<n>
+            int target = Integer.parseInt(line.substring("UNDO_REQUEST:".length()));
             int opt = JOptionPane.showConfirmDialog(null, "对方请求悔棋，是否同意？", "悔棋请求", JOptionPane.YES_NO_OPTION);
+            PrintWriter w = out;
+            if (w == null) return;
             if (opt == JOptionPane.YES_OPTION) {
-                // 接受者立即在本地执行撤销（保证双方一致），然后通知对方
-                boolean ok = model.undoLast();
-                if (ok) {
-                    view.appendChat("你已同意悔棋，己方已撤一手。");
-                    out.println("UNDO_ACCEPT");
+                if (model.getMoveCount() == target + 1) {
+                    view.appendChat("你已同意悔棋。");
+                    w.println("UNDO_ACCEPT:" + target);
                 } else {
-                    view.appendChat("无法悔棋（无棋步）。");
-                    out.println("UNDO_DENY");
+                    view.appendChat("无法悔棋（棋局已变化）。");
+                    w.println("UNDO_DENY");
                 }
             } else {
-                out.println("UNDO_DENY");
+                w.println("UNDO_DENY");
             }
             return;
         }
-        if (line.equals("UNDO_ACCEPT")) {
-            // 对方同意悔棋，作为请求方在收到此消息时也撤一手
-            boolean ok = model.undoLast();
-            if (ok) view.appendChat("悔棋已被对方接受，已悔一手。");
-            else view.appendChat("无法悔棋（本地无棋步）。");
+        if (line.equals("UNDO_STALE")) {
+            view.appendChat("悔棋未执行：请求发出后棋局已变化。");
             return;
         }
         if (line.equals("UNDO_DENY")) {
             view.appendChat("对方拒绝悔棋。");
             return;
         }
+        if (line.startsWith("TIMEOUT:")) {
+            // 走棋超时判负，随后会收到 GAME_OVER
+            String loser = line.substring("TIMEOUT:".length());
+            myTurn = false;
+            view.appendChat(("BLACK".equals(loser) ? "黑方" : "白方") + "走棋超时判负。");
+            return;
+        }
         if (line.startsWith("GAME_OVER:")) {
             String winner = line.substring("GAME_OVER:".length());
             view.appendChat("游戏结束，获胜方: " + winner);
@@ -168,15 +323,34 @@ public class GameController {
             view.appendChat("对方请求进入复盘模式。");
             return;
         }
-        if (line.equals("RESET")) {
-            // 对方发起新开局，重置本地模型并通知用户
+        if (line.startsWith("RESET:")) {
+            // 服务器广播的新开局（任一方发起），双方此时才重置本地模型
+            game = Integer.parseInt(line.substring("RESET:".length()));
             model.reset();
-            view.appendChat("对方发起新开局，已重置局面。");
+            pendingSeq = -1;
+            myTurn = model.getCurrentTurn() == myColor;
+            view.appendChat("新开局，已重置局面。");
+            return;
+        }
+        if (line.equals("RESET_STALE")) {
+            view.appendChat("新开局请求未执行：棋局已被重置。");
             return;
         }
         view.appendChat("收到: " + line);
     }
 
+    // SYNC:<base>:<x,y,c;x,y,c...>：撤回到 base 步，再补上服务器发来的缺失棋步
+    private void applySync(String line) {
+        int sep = line.indexOf(':', 5);
+        int base = Integer.parseInt(line.substring(5, sep));
+        List<Move> tail = Move.parseList(line.substring(sep + 1));
+        while (model.getMoveCount() > base) model.undoLast();
+        for (Move m : tail) model.place(m.x, m.y, m.color);
+        pendingSeq = -1;
+        myTurn = model.getCurrentTurn() == myColor;
+        view.appendChat("同步完成，共 " + model.getMoveCount() + " 步。");
+    }
+
     private void onBoardClicked(int x, int y) {
         if (myColor == 0) {
             view.appendChat("尚未分配颜色，等待开局。");
@@ -186,24 +360,26 @@ public class GameController {
             view.appendChat("现在不是你的回合。");
             return;
         }
-        synchronized (model) {
-            if (model.at(x, y) != 0) {
-                view.appendChat("该位置已有棋子。");
-                return;
-            }
-            boolean ok = model.place(x, y, myColor);
-            if (!ok) {
-                view.appendChat("落子失败。");
-                return;
-            }
-            out.println("MOVE:" + x + "," + y);
-            myTurn = false;
-            if (model.checkWin(x, y)) {
-                view.appendChat("你获胜！");
-                out.println("GAME_OVER:" + (myColor == 1 ? "BLACK" : "WHITE"));
-                view.showInfo("你获胜！");
-            }
+        PrintWriter w = out;
+        if (w == null) {
+            view.appendChat("尚未连接到服务器。");
+            return;
         }
+        if (model.at(x, y) != 0) {
+            view.appendChat("该位置已有棋子。");
+            return;
+        }
+        int seq = model.getMoveCount();
+        if (!model.place(x, y, myColor)) {
+            view.appendChat("落子失败。");
+            return;
+        }
+        // 不等服务器确认，本地立即生效
+        pendingSeq = seq;
+        myTurn = false;
+        w.println("MOVE:" + seq + ":" + x + "," + y);
+        // 胜负以服务器确认该步后广播的 GAME_OVER 为准
+        if (model.checkWin(x, y)) view.appendChat("你获胜！");
     }
 
     private void sendChat(String text) {
@@ -214,30 +390,41 @@ public class GameController {
         }
     }
 
+    // UNDO_REQUEST:<撤后步数>：指明要撤的是哪一手，与途中的棋步交错时服务器不会误撤
     private void sendUndoRequest() {
-        if (out != null) {
-            out.println("UNDO_REQUEST");
+        if (out == null) {
+            view.appendChat("尚未连接到服务器。");
+        } else if (model.getMoveCount() == 0) {
+            view.appendChat("无法悔棋（无棋步）。");
+        } else {
+            out.println("UNDO_REQUEST:" + (model.getMoveCount() - 1));
             view.appendChat("已发送悔棋请求，等待对方...");
-        } else view.appendChat("尚未连接到服务器。");
+        }
     }
 
+    // 沿棋谱树从根走回当前节点，悔棋留下的分支不受影响
     private void startReplay() {
-        List<Move> moves = model.getMoves();
-        if (moves.isEmpty()) {
+        VariationNode end = model.getCurrentNode();
+        if (end.depth == 0) {
             view.showInfo("当前无棋步可复盘。");
             return;
         }
+        VariationNode[] line = new VariationNode[end.depth + 1];
+        for (VariationNode n = end; n != null; n = n.parent) line[n.depth] = n;
         new Thread(() -> {
             try {
-                model.reset();
+                model.goTo(line[0]);
                 Thread.sleep(300);
-                for (Move m : moves) {
+                for (int i = 1; i < line.length; i++) {
                     Thread.sleep(500);
-                    model.place(m.x, m.y, m.color);
+                    model.goTo(line[i]);
                 }
                 view.showInfo("复盘结束。");
             } catch (InterruptedException e) {
                 // ignore
+            } catch (IllegalArgumentException e) {
+                // 复盘期间棋局被重置，原棋谱树已不存在
+                view.appendChat("复盘中止：棋局已重置。");
             }
         }).start();
     }
@@ -245,10 +432,9 @@ public class GameController {
     // 将本地重置改为发送 RESET 给对手
     private void sendResetRequest() {
         if (out != null) {
-            out.println("RESET");
-            // 本地也立即重置（视需求可等对方确认）
-            model.reset();
-            view.appendChat("已发起新开局并本地重置。");
+            // 等服务器广播 RESET 后再重置，避免与途中的棋步交错
+            out.println("RESET:" + game);
+            view.appendChat("已发起新开局。");
         } else {
             model.reset();
             view.appendChat("本地重置（未连接服务器）。");
@@ -1,13 +1,12 @@
 package controller;
 
 import model.GameModel;
-import model.Move;
+import model.VariationNode;
 import view.GameView;
 
 import javax.swing.*;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
-import java.util.List;
 
 /**
  * 离线控制器：用于本机双人对弈（不依赖服务器）。
@@ -54,7 +53,8 @@ public class OfflineGameController {
                     case "move":
                     case "undo":
                     case "reset":
-                    case "turn": {
+                    case "turn":
+                    case "branch": { // branch：切换到棋谱树上的其他节点（复盘/变化）
                         view.updateBoard(model);
                         break;
                     }
@@ -97,27 +97,33 @@ public class OfflineGameController {
 
     private void performUndo() {
         boolean ok = model.undoLast();
-        if (ok) view.appendChat("悔棋：已悔一手。");
+        if (ok) view.appendChat("悔棋：已悔一手（该手作为分支保留在棋谱中）。");
         else view.appendChat("悔棋失败：无可悔步。");
     }
 
+    // 沿棋谱树从根走回当前节点，悔棋留下的分支不受影响
     private void startReplay() {
-        List<Move> moves = model.getMoves();
-        if (moves.isEmpty()) {
+        VariationNode end = model.getCurrentNode();
+        if (end.depth == 0) {
             view.showInfo("当前无棋步可复盘。");
             return;
         }
+        VariationNode[] line = new VariationNode[end.depth + 1];
+        for (VariationNode n = end; n != null; n = n.parent) line[n.depth] = n;
         new Thread(() -> {
             try {
-                model.reset();
+                model.goTo(line[0]);
                 Thread.sleep(300);
-                for (Move m : moves) {
+                for (int i = 1; i < line.length; i++) {
                     Thread.sleep(500);
-                    model.place(m.x, m.y, m.color);
+                    model.goTo(line[i]);
                 }
                 view.showInfo("复盘结束。");
             } catch (InterruptedException e) {
                 // ignore
+            } catch (IllegalArgumentException e) {
+                // 复盘期间棋局被重置，原棋谱树已不存在
+                view.appendChat("复盘中止：棋局已重置。");
             }
         }).start();
     }
@@ -0,0 +1,26 @@
+package controller;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 客户端启动耗时记录：-Dgomoku.startupTrace=true 时把各事件距 JVM 启动的毫秒数输出到标准输出，
+ * 每个事件只记第一次（main、connected、first-frame、paired）。
+ * -Dgomoku.startupTrace=exit 时在 first-frame 与 paired 都到达后退出进程，供启动基准与 CDS 归档的训练运行使用。
+ */
+public final class StartupTrace {
+    private static final String MODE = System.getProperty("gomoku.startupTrace", "");
+    private static final boolean ENABLED = MODE.equals("true") || MODE.equals("exit");
+    private static final Set<String> seen = ConcurrentHashMap.newKeySet();
+
+    private StartupTrace() {
+    }
+
+    public static void mark(String event) {
+        if (!ENABLED || !seen.add(event)) return;
+        long ms = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.out.println("startup: " + event + " " + ms + " ms");
+        if (MODE.equals("exit") && seen.contains("first-frame") && seen.contains("paired")) System.exit(0);
+    }
+}
@@ -0,0 +1,73 @@
+package controller;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+/**
+ * 客户端 TLS：-Dgomoku.tls=true 时 GameController 以 TLS 连接服务器，并校验证书中的主机名。
+ * 信任库 gomoku.tls.truststore（PKCS12，口令 gomoku.tls.password，默认 changeit）；不设置时使用 JDK 自带的 CA。
+ * 进程内共用一个 SSLContext，断线重连时据其会话缓存恢复 TLS 会话，省去完整握手。
+ */
+public final class TlsClient {
+    private static SSLContext shared;
+
+    private TlsClient() {
+    }
+
+    public static boolean enabled() {
+        return Boolean.getBoolean("gomoku.tls");
+    }
+
+    public static synchronized SSLContext sharedContext() throws IOException {
+        if (shared == null) shared = newContext();
+        return shared;
+    }
+
+    /** 按系统属性新建 SSLContext（会话缓存独立，不与其他 SSLContext 共享）。 */
+    public static SSLContext newContext() throws IOException {
+        String truststore = System.getProperty("gomoku.tls.truststore");
+        try {
+            TrustManagerFactory tmf = null;
+            if (truststore != null) {
+                KeyStore ks = KeyStore.getInstance("PKCS12");
+                try (InputStream in = Files.newInputStream(Paths.get(truststore))) {
+                    ks.load(in, System.getProperty("gomoku.tls.password", "changeit").toCharArray());
+                }
+                tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                tmf.init(ks);
+            }
+            SSLContext ctx = SSLContext.getInstance("TLS");
+            ctx.init(null, tmf == null ? null : tmf.getTrustManagers(), null);
+            return ctx;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("cannot load TLS truststore " + truststore + ": " + e.getMessage(), e);
+        }
+    }
+
+    /** 连接 host:port 并完成 TLS 握手。 */
+    public static SSLSocket connect(SSLContext ctx, String host, int port) throws IOException {
+        Socket raw = new Socket(host, port);
+        // 握手分多段往返，关闭 Nagle 以免每段都等延迟确认
+        raw.setTcpNoDelay(true);
+        SSLSocket s = (SSLSocket) ctx.getSocketFactory().createSocket(raw, host, port, true);
+        SSLParameters p = s.getSSLParameters();
+        p.setEndpointIdentificationAlgorithm("HTTPS");
+        s.setSSLParameters(p);
+        try {
+            s.startHandshake();
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+        return s;
+    }
+}
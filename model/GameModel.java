@@ -17,14 +17,30 @@ import java.util.List;
 /**
  * 五子棋模型（Model）。
  * 负责棋盘、走法列表、悔棋、胜负检测，并通过 PropertyChange 支持进行事件通知。
+ *
+ * 棋谱以变化树（VariationNode）保存：落子走到（或新建）当前节点的子节点，悔棋只退回父节点，
+ * 被悔掉的着法仍作为分支保留；goTo 切换到树上任意节点时只在棋盘上撤销/补下两节点与公共祖先之间的差异。
+ * 引擎搜索时的试走使用 makeMove/unmakeMove，不进入棋谱树也不广播事件。
+ *
+ * 除二维棋盘外，每条线（行、列、两个方向的斜线）还以每格 2 位打包成一个 long，随落子/悔棋增量更新，
+ * 两端各补 4 格“棋盘外”。取某点所在线上的 9 格窗口即可用 PatternTable 查出棋型，
+ * 胜负检测与局面评估都变成查表。
  */
 public class GameModel {
     public static final int SIZE = 15;
     // 0 empty, 1 black, 2 white
     private int[][] board = new int[SIZE][SIZE];
+    // 当前局面的着法序列：前 node.depth 步即根到 node 的路径，其后是搜索中的试走
     private final List<Move> moves = new ArrayList<>();
+    private VariationNode node = VariationNode.newTree();
     private int currentTurn = 1; // 黑先
 
+    // 方向：0 横、1 竖、2 主对角线（x、y 同增）、3 副对角线（x 增 y 减）
+    public static final int[][] DIRS = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
+    private static final int PAD = PatternTable.CENTER;
+    // lines[dir][line]：打包的线，第 (pos + PAD) 格位于第 2*(pos + PAD) 位
+    private final long[][] lines = {new long[SIZE], new long[SIZE], new long[2 * SIZE - 1], new long[2 * SIZE - 1]};
+
     private final PropertyChangeSupport pcs = new PropertyChangeSupport(this);
 
     public GameModel() {
@@ -34,8 +50,11 @@ public class GameModel {
     public synchronized boolean place(int x, int y, int color) {
         if (!inBounds(x, y)) return false;
         if (board[y][x] != 0) return false;
+        checkNotSearching();
+        node = node.child(x, y, color);
+        Move m = node.move;
         board[y][x] = color;
-        Move m = new Move(x, y, color);
+        setLineCell(x, y, color);
         moves.add(m);
         int oldTurn = currentTurn;
         currentTurn = 3 - color;
@@ -49,10 +68,14 @@ public class GameModel {
         return true;
     }
 
+    /** 悔一手：退回父节点，被悔的着法作为分支保留在棋谱树中。 */
     public synchronized boolean undoLast() {
         if (moves.isEmpty()) return false;
+        checkNotSearching();
+        node = node.parent;
         Move last = moves.remove(moves.size() - 1);
         board[last.y][last.x] = 0;
+        setLineCell(last.x, last.y, 0);
         int oldTurn = currentTurn;
         currentTurn = last.color;
         pcs.firePropertyChange("undo", last, null);
@@ -60,15 +83,81 @@ public class GameModel {
         return true;
     }
 
+    /** 清空棋盘并开始一棵新的棋谱树。 */
     public synchronized void reset() {
         for (int y = 0; y < SIZE; y++) Arrays.fill(board[y], 0);
+        resetLines();
         moves.clear();
+        node = VariationNode.newTree();
         int oldTurn = currentTurn;
         currentTurn = 1;
         pcs.firePropertyChange("reset", null, null);
         pcs.firePropertyChange("turn", oldTurn, currentTurn);
     }
 
+    /**
+     * 切换到棋谱树上的 target 节点：先撤销当前节点到公共祖先之间的着法，再补下公共祖先到 target 的着法，
+     * 不重置棋盘。完成后广播一次 "branch"（旧节点 -> 新节点）与 "turn"。
+     * target 不属于当前棋谱树时抛出 IllegalArgumentException。
+     */
+    public synchronized void goTo(VariationNode target) {
+        checkNotSearching();
+        if (target == node) return;
+        VariationNode lca = node.commonAncestor(target);
+        if (lca == null) throw new IllegalArgumentException("node is not in this game tree");
+        VariationNode old = node;
+        while (moves.size() > lca.depth) {
+            Move m = moves.remove(moves.size() - 1);
+            board[m.y][m.x] = 0;
+            setLineCell(m.x, m.y, 0);
+        }
+        Move[] forward = new Move[target.depth - lca.depth];
+        for (VariationNode n = target; n != lca; n = n.parent) forward[n.depth - lca.depth - 1] = n.move;
+        for (Move m : forward) {
+            board[m.y][m.x] = m.color;
+            setLineCell(m.x, m.y, m.color);
+            moves.add(m);
+        }
+        node = target;
+        int oldTurn = currentTurn;
+        currentTurn = target.move == null ? 1 : 3 - target.move.color;
+        pcs.firePropertyChange("branch", old, target);
+        pcs.firePropertyChange("turn", oldTurn, currentTurn);
+    }
+
+    /** 当前局面对应的棋谱树节点。 */
+    public synchronized VariationNode getCurrentNode() {
+        return node;
+    }
+
+    /** 棋谱树的根（空棋盘）。 */
+    public synchronized VariationNode getRoot() {
+        return node.root();
+    }
+
+    /**
+     * 搜索用的试走：只更新棋盘与线编码，不进入棋谱树、不广播事件，必须与 unmakeMove 成对使用。
+     * 试走未全部撤销前不能调用 place/undoLast/goTo。
+     */
+    public synchronized void makeMove(int x, int y, int color) {
+        board[y][x] = color;
+        setLineCell(x, y, color);
+        moves.add(new Move(x, y, color));
+        currentTurn = 3 - color;
+    }
+
+    /** 撤销最近一次 makeMove。 */
+    public synchronized void unmakeMove() {
+        Move last = moves.remove(moves.size() - 1);
+        board[last.y][last.x] = 0;
+        setLineCell(last.x, last.y, 0);
+        currentTurn = last.color;
+    }
+
+    private void checkNotSearching() {
+        if (moves.size() != node.depth) throw new IllegalStateException("search moves still on the board");
+    }
+
     public synchronized int at(int x, int y) {
         if (!inBounds(x, y)) return 0;
         return board[y][x];
@@ -78,6 +167,10 @@ public class GameModel {
         return new ArrayList<>(moves);
     }
 
+    public synchronized int getMoveCount() {
+        return moves.size();
+    }
+
     public synchronized int getCurrentTurn() {
         return currentTurn;
     }
@@ -86,30 +179,122 @@ public class GameModel {
         return x >= 0 && y >= 0 && x < SIZE && y < SIZE;
     }
 
-    // 五子连珠检测（基于最后落子）
+    // 五子连珠检测（基于最后落子）：任一方向上的棋型为“五”
     public synchronized boolean checkWin(int x, int y) {
-        int color = board[y][x];
+        int color = at(x, y);
         if (color == 0) return false;
-        int[][] dirs = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
-        for (int[] d : dirs) {
-            int cnt = 1;
-            cnt += countDir(x, y, d[0], d[1], color);
-            cnt += countDir(x, y, -d[0], -d[1], color);
-            if (cnt >= 5) return true;
+        for (int d = 0; d < 4; d++) {
+            if (PatternTable.lookup(window(x, y, d), color) == PatternTable.FIVE) return true;
         }
         return false;
     }
 
-    // dx, dy: 步长
-    private int countDir(int x, int y, int dx, int dy, int color) {
-        int c = 0;
-        int nx = x + dx, ny = y + dy;
-        while (inBounds(nx, ny) && board[ny][nx] == color) {
-            c++;
-            nx += dx;
-            ny += dy;
+    /** (x, y) 处棋子在方向 dir 上的棋型（PatternTable 常量），空点返回 NONE。 */
+    public synchronized int pattern(int x, int y, int dir) {
+        int color = at(x, y);
+        return color == 0 ? PatternTable.NONE : PatternTable.lookup(window(x, y, dir), color);
+    }
+
+    /** 若 color 落在空点 (x, y)，该子在方向 dir 上形成的棋型；用于威胁检测与着法排序。 */
+    public synchronized int patternIfPlaced(int x, int y, int color, int dir) {
+        if (at(x, y) != 0) return PatternTable.NONE;
+        int w = window(x, y, dir) | (color << (2 * PatternTable.CENTER));
+        return PatternTable.lookup(w, color);
+    }
+
+    /**
+     * 局面评估（color 视角）：双方棋型分值之差。
+     * 每个方向上，同色且彼此相距不超过 4 格、中间没有对方棋子或棋盘边界的棋子构成一段，
+     * 每段只按段内最强的棋型计一次分（由段内第一个棋子负责），活四不会因四个子各查一次而计四次。
+     */
+    public synchronized int evaluate(int color) {
+        int score = 0;
+        for (Move m : moves) {
+            for (int d = 0; d < 4; d++) {
+                int w = window(m.x, m.y, d);
+                if (continuesSegment(w, m.color)) continue;
+                int s = PatternTable.score(segmentPattern(m.x, m.y, d, m.color, w));
+                score += (m.color == color) ? s : -s;
+            }
+        }
+        return score;
+    }
+
+    // 窗口中心之前 4 格内有同段的同色棋子（即中心不是该段第一个棋子）
+    private static boolean continuesSegment(int w, int color) {
+        for (int i = PatternTable.CENTER - 1; i >= 0; i--) {
+            int c = PatternTable.cell(w, i);
+            if (c == color) return true;
+            if (c != 0) return false;
+        }
+        return false;
+    }
+
+    // 从段内第一个棋子 (x, y) 起沿 dir 向后，取段内各棋子棋型的最大值
+    private int segmentPattern(int x, int y, int dir, int color, int w) {
+        int best = PatternTable.lookup(w, color);
+        while (true) {
+            int k = 0;
+            for (int i = PatternTable.CENTER + 1; i < PatternTable.WINDOW; i++) {
+                int c = PatternTable.cell(w, i);
+                if (c == color) {
+                    k = i - PatternTable.CENTER;
+                    break;
+                }
+                if (c != 0) break;
+            }
+            if (k == 0) return best;
+            x += k * DIRS[dir][0];
+            y += k * DIRS[dir][1];
+            w = window(x, y, dir);
+            best = Math.max(best, PatternTable.lookup(w, color));
+        }
+    }
+
+    // (x, y) 在方向 dir 上所在的线号与线内位置
+    private static int lineOf(int x, int y, int dir) {
+        switch (dir) {
+            case 0: return y;
+            case 1: return x;
+            case 2: return x - y + SIZE - 1;
+            default: return x + y;
+        }
+    }
+
+    private static int posOf(int x, int y, int dir) {
+        switch (dir) {
+            case 0: return x;
+            case 1: return y;
+            case 2: return Math.min(x, y);
+            default: return x - Math.max(0, x + y - (SIZE - 1));
+        }
+    }
+
+    // 以 (x, y) 为中心、沿 dir 的 9 格窗口（打包后的 18 位）
+    private int window(int x, int y, int dir) {
+        long line = lines[dir][lineOf(x, y, dir)];
+        return (int) (line >>> (2 * posOf(x, y, dir))) & PatternTable.MASK;
+    }
+
+    private void setLineCell(int x, int y, int color) {
+        for (int d = 0; d < 4; d++) {
+            int shift = 2 * (posOf(x, y, d) + PAD);
+            long[] l = lines[d];
+            int i = lineOf(x, y, d);
+            l[i] = (l[i] & ~(3L << shift)) | ((long) color << shift);
+        }
+    }
+
+    // 所有线置为“线内空、线外为棋盘外(3)”
+    private void resetLines() {
+        for (int d = 0; d < 4; d++) {
+            for (int i = 0; i < lines[d].length; i++) {
+                int len = (d < 2) ? SIZE : SIZE - Math.abs(i - (SIZE - 1));
+                long l = -1L;
+                for (int p = 0; p < len; p++) l &= ~(3L << (2 * (p + PAD)));
+                lines[d][i] = l;
+            }
         }
-        return c;
     }
 
     public void addPropertyChangeListener(PropertyChangeListener l) {
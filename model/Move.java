@@ -1,6 +1,8 @@
 package model;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * 棋步记录
@@ -17,6 +19,50 @@ public class Move implements Serializable {
         this.color = color;
     }
 
+    /**
+     * 棋谱前 n 步的链式哈希，用于断线重连时校验客户端与服务器的棋谱前缀是否一致。
+     * 客户端与 Server 必须使用同一算法。
+     */
+    public static long historyHash(List<Move> moves, int n) {
+        long h = 17;
+        for (int i = 0; i < n && i < moves.size(); i++) {
+            Move m = moves.get(i);
+            h = h * 1000003L + (m.y * GameModel.SIZE + m.x) * 4 + m.color;
+        }
+        return h;
+    }
+
+    /** 哈希在 RESUME 行中的文本形式（无符号十六进制）；与 parseHash 成对使用。 */
+    public static String formatHash(long hash) {
+        return Long.toHexString(hash);
+    }
+
+    /** formatHash 的逆操作；负数哈希同样按无符号解析，格式错误抛出 NumberFormatException。 */
+    public static long parseHash(String s) {
+        return Long.parseUnsignedLong(s, 16);
+    }
+
+    /** 棋谱的文本形式：各步 toString() 以 ';' 连接，如 "7,7,1;8,8,2"。 */
+    public static String formatList(List<Move> moves) {
+        StringBuilder sb = new StringBuilder(moves.size() * 7);
+        for (Move m : moves) {
+            if (sb.length() > 0) sb.append(';');
+            sb.append(m);
+        }
+        return sb.toString();
+    }
+
+    /** formatList 的逆操作；空串返回空列表。 */
+    public static List<Move> parseList(String s) {
+        List<Move> moves = new ArrayList<>();
+        if (s == null || s.trim().isEmpty()) return moves;
+        for (String item : s.trim().split(";")) {
+            String[] p = item.split(",");
+            moves.add(new Move(Integer.parseInt(p[0].trim()), Integer.parseInt(p[1].trim()), Integer.parseInt(p[2].trim())));
+        }
+        return moves;
+    }
+
     @Override
     public String toString() {
         return x + "," + y + "," + color;
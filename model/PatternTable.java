@@ -0,0 +1,96 @@
+package model;
+
+/**
+ * 棋型查表。
+ *
+ * 以某个棋子为中心、沿一个方向取 9 格（左右各 4 格）组成“窗口”，每格 2 位：
+ * 0 空、1 黑、2 白、3 棋盘外。窗口共 18 位，可直接作为下标查表得到中心棋子在该方向上的棋型。
+ * 表以黑方视角预先计算；白方查询时把每格的 1/2 互换后再查。
+ *
+ * 棋型的递推定义：
+ * - 五：经过中心的连续同色 >= 5；
+ * - 活四 / 冲四：再下一子即可成五（且五经过中心）的空点有 >= 2 个 / 恰好 1 个；
+ * - 活三 / 眠三：存在一个空点，下子后成为活四 / 冲四；
+ * - 活二 / 眠二：存在一个空点，下子后成为活三 / 眠三。
+ */
+public final class PatternTable {
+    public static final int NONE = 0, TWO = 1, OPEN_TWO = 2, THREE = 3, OPEN_THREE = 4, FOUR = 5, OPEN_FOUR = 6, FIVE = 7;
+
+    /** 窗口格数、中心下标与位掩码。 */
+    public static final int WINDOW = 9, CENTER = 4, MASK = (1 << (2 * WINDOW)) - 1;
+
+    // 各棋型的估值（棋型按强度递增编号；GameModel.evaluate 对每条线上的每一段只取最强棋型计一次）
+    private static final int[] SCORE = {0, 10, 100, 100, 1_000, 1_000, 10_000, 100_000};
+
+    private static final byte[] TABLE = new byte[1 << (2 * WINDOW)];
+    // 每个 2 位格子的低位
+    private static final int LOW_BITS = 0x15555;
+
+    static {
+        // 0 表示尚未计算，存入的是棋型 + 1
+        for (int idx = 0; idx <= MASK; idx++) {
+            if (cell(idx, CENTER) == 1) classify(idx);
+        }
+    }
+
+    private PatternTable() {}
+
+    /** 查询窗口 idx 中心棋子（颜色 color）的棋型。 */
+    public static int lookup(int idx, int color) {
+        if (color == 2) idx = swapColors(idx);
+        int v = TABLE[idx];
+        return v == 0 ? NONE : v - 1;
+    }
+
+    public static int score(int pattern) {
+        return SCORE[pattern];
+    }
+
+    /** 把窗口中的黑白互换（棋盘外与空格不变）。 */
+    public static int swapColors(int idx) {
+        return ((idx & LOW_BITS) << 1) | ((idx >>> 1) & LOW_BITS);
+    }
+
+    static int cell(int idx, int i) {
+        return (idx >>> (2 * i)) & 3;
+    }
+
+    private static int withCell(int idx, int i, int v) {
+        return (idx & ~(3 << (2 * i))) | (v << (2 * i));
+    }
+
+    private static int classify(int idx) {
+        if (TABLE[idx] != 0) return TABLE[idx] - 1;
+        int result;
+        if (runThroughCenter(idx) >= 5) {
+            result = FIVE;
+        } else {
+            int wins = 0, best = NONE;
+            for (int i = 0; i < WINDOW; i++) {
+                if (cell(idx, i) != 0) continue;
+                int next = withCell(idx, i, 1);
+                if (runThroughCenter(next) >= 5) {
+                    wins++;
+                } else if (best < OPEN_FOUR) {
+                    best = Math.max(best, classify(next));
+                }
+            }
+            if (wins >= 2) result = OPEN_FOUR;
+            else if (wins == 1) result = FOUR;
+            else if (best == OPEN_FOUR) result = OPEN_THREE;
+            else if (best == FOUR) result = THREE;
+            else if (best == OPEN_THREE) result = OPEN_TWO;
+            else if (best == THREE) result = TWO;
+            else result = NONE;
+        }
+        TABLE[idx] = (byte) (result + 1);
+        return result;
+    }
+
+    private static int runThroughCenter(int idx) {
+        int n = 1;
+        for (int i = CENTER - 1; i >= 0 && cell(idx, i) == 1; i--) n++;
+        for (int i = CENTER + 1; i < WINDOW && cell(idx, i) == 1; i++) n++;
+        return n;
+    }
+}
@@ -0,0 +1,100 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 棋谱树（变化树）的节点。
+ *
+ * 每个节点表示“从根开始走到这里”的一个局面：move 为到达该局面的最后一步（根节点为 null），
+ * parent 指向上一局面。节点本身不可变，各分支共享公共前缀；只有子节点列表会增长，
+ * 并且采用写时复制（新数组整体替换），读取方无需加锁。
+ * 同一局面下相同的着法只会有一个子节点，因此反复探索同一变化不会增加内存。
+ */
+public final class VariationNode {
+    private static final VariationNode[] NO_CHILDREN = new VariationNode[0];
+
+    public final Move move;
+    public final VariationNode parent;
+    public final int depth;
+    private volatile VariationNode[] children = NO_CHILDREN;
+
+    private VariationNode(Move move, VariationNode parent) {
+        this.move = move;
+        this.parent = parent;
+        this.depth = parent == null ? 0 : parent.depth + 1;
+    }
+
+    /** 新棋谱树的根节点（空棋盘）。 */
+    public static VariationNode newTree() {
+        return new VariationNode(null, null);
+    }
+
+    /** 取得着法 (x, y, color) 对应的子节点，不存在时创建。 */
+    public VariationNode child(int x, int y, int color) {
+        VariationNode c = find(x, y, color);
+        if (c != null) return c;
+        synchronized (this) {
+            c = find(x, y, color);
+            if (c != null) return c;
+            c = new VariationNode(new Move(x, y, color), this);
+            VariationNode[] old = children;
+            VariationNode[] next = Arrays.copyOf(old, old.length + 1);
+            next[old.length] = c;
+            children = next;
+            return c;
+        }
+    }
+
+    /** 已有的子节点，没有则返回 null。 */
+    public VariationNode find(int x, int y, int color) {
+        for (VariationNode c : children) {
+            if (c.move.x == x && c.move.y == y && c.move.color == color) return c;
+        }
+        return null;
+    }
+
+    /** 子节点（按首次走出的先后顺序），第一个即主变化。 */
+    public List<VariationNode> children() {
+        return Collections.unmodifiableList(Arrays.asList(children));
+    }
+
+    /** 最近走出的子节点（悔棋后“重做”用），没有则返回 null。 */
+    public VariationNode lastChild() {
+        VariationNode[] c = children;
+        return c.length == 0 ? null : c[c.length - 1];
+    }
+
+    public VariationNode root() {
+        VariationNode n = this;
+        while (n.parent != null) n = n.parent;
+        return n;
+    }
+
+    /** 从根到本节点的着法序列。 */
+    public List<Move> path() {
+        Move[] out = new Move[depth];
+        for (VariationNode n = this; n.parent != null; n = n.parent) out[n.depth - 1] = n.move;
+        return new ArrayList<>(Arrays.asList(out));
+    }
+
+    /** 与 other 的最近公共祖先；不在同一棵树上时返回 null。 */
+    public VariationNode commonAncestor(VariationNode other) {
+        VariationNode a = this, b = other;
+        while (a.depth > b.depth) a = a.parent;
+        while (b.depth > a.depth) b = b.parent;
+        while (a != b) {
+            a = a.parent;
+            b = b.parent;
+            if (a == null || b == null) return null;
+        }
+        return a;
+    }
+
+    @Override
+    public String toString() {
+        return move == null ? "root" : depth + ":" + move;
+    }
+}
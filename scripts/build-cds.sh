@@ -0,0 +1,55 @@
+#!/bin/sh
+# 为服务器与客户端生成 AppCDS 动态归档（需 JDK 13+），缩短类加载与启动时间。
+# --aot（需 JDK 25+）改为生成 AOT 缓存：除类之外还包含训练运行中采集的 JIT 方法剖析，启动后更快进入已优化状态。
+# 用法: scripts/build-cds.sh [--aot]
+# 产物: out/gomoku.jar，out/server.jsa、out/client.jsa（--aot 时为 out/server.aot、out/client.aot）
+# 训练运行在回环地址上进行：服务器接待两个客户端（需图形环境，出现首帧并配对后自动退出）与一组 ProxyBench 机器人；
+# 没有图形环境时跳过客户端，只生成服务器归档。
+# 使用: java -XX:SharedArchiveFile=out/client.jsa -cp out/gomoku.jar client.ClientApp localhost 5000 Alice
+#       java -XX:AOTCache=out/client.aot -cp out/gomoku.jar client.ClientApp localhost 5000 Alice
+set -e
+cd "$(dirname "$0")/.."
+PORT=${GOMOKU_TRAIN_PORT:-5099}
+
+rm -rf out/classes
+mkdir -p out/classes
+javac -encoding UTF-8 -d out/classes model/*.java view/*.java controller/*.java client/*.java Server/*.java ai/*.java tools/*.java
+jar cf out/gomoku.jar -C out/classes .
+
+if [ "$1" = "--aot" ]; then
+    if ! java -XX:+PrintFlagsFinal -version 2>/dev/null | grep -q AOTCacheOutput; then
+        echo "当前 JDK 不支持 -XX:AOTCacheOutput（需 JDK 25+）" >&2
+        exit 1
+    fi
+    SERVER_OPT="-XX:AOTCacheOutput=out/server.aot"
+    CLIENT_OPT="-XX:AOTCacheOutput=out/client.aot"
+else
+    SERVER_OPT="-XX:ArchiveClassesAtExit=out/server.jsa"
+    CLIENT_OPT="-XX:ArchiveClassesAtExit=out/client.jsa"
+fi
+
+java $SERVER_OPT -Dgomoku.turnSeconds=0 -cp out/gomoku.jar Server.Server "$PORT" 5 > out/train-server.log 2>&1 &
+SERVER=$!
+trap 'kill $SERVER 2>/dev/null' EXIT
+i=0
+until grep -q "started on port" out/train-server.log; do
+    i=$((i + 1))
+    [ "$i" -le 100 ] || { echo "server did not start" >&2; exit 1; }
+    sleep 0.1
+done
+
+if [ -n "$DISPLAY" ] || [ "$(uname)" = "Darwin" ]; then
+    java $CLIENT_OPT -Dgomoku.startupTrace=exit -cp out/gomoku.jar client.ClientApp localhost "$PORT" train-a &
+    CLIENT=$!
+    java -Dgomoku.startupTrace=exit -cp out/gomoku.jar client.ClientApp localhost "$PORT" train-b > /dev/null
+    wait $CLIENT
+else
+    echo "没有图形环境，跳过客户端归档" >&2
+fi
+
+# 服务器：跑几秒机器人对弈（走棋、悔棋、重置），再以 SIGTERM 结束，JVM 退出时写出归档
+java -cp out/gomoku.jar tools.ProxyBench localhost "$PORT" -pairs 2 -seconds 3 -settle 1 > /dev/null
+kill $SERVER
+wait $SERVER || true
+trap - EXIT
+ls -l out/*.jsa out/*.aot 2>/dev/null || true
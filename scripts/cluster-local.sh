@@ -0,0 +1,25 @@
+#!/bin/sh
+# 在本机回环地址上启动 N 个 Server 节点（默认 3 个），用于测试跨节点配对与重连。
+# 用法: scripts/cluster-local.sh [节点数]
+# 客户端可连接任一节点: java -cp out client.ClientApp localhost 5001 Alice
+set -e
+cd "$(dirname "$0")/.."
+N=${1:-3}
+mkdir -p out
+javac -encoding UTF-8 -d out model/*.java view/*.java controller/*.java client/*.java Server/*.java
+
+CLUSTER=""
+i=1
+while [ "$i" -le "$N" ]; do
+    CLUSTER="${CLUSTER:+$CLUSTER,}n$i@127.0.0.1:$((7000 + i))"
+    i=$((i + 1))
+done
+
+i=1
+while [ "$i" -le "$N" ]; do
+    java -Dgomoku.node=n$i -Dgomoku.cluster="$CLUSTER" -cp out Server.Server $((5000 + i)) &
+    echo "node n$i: client port $((5000 + i)), cluster port $((7000 + i)), pid $!"
+    i=$((i + 1))
+done
+trap 'kill $(jobs -p) 2>/dev/null' INT TERM
+wait
@@ -0,0 +1,65 @@
+#!/bin/sh
+# 启动耗时对比（先运行 scripts/build-cds.sh 生成 out/gomoku.jar 与归档）。
+# 服务器：到开始监听的时间，无归档 / 有归档。
+# 客户端（需图形环境）：两个客户端同时启动并配对，取第一个客户端的 first-frame 与 paired（距 JVM 启动的毫秒数），
+#   依次比较 --sync-view（原先先建界面再连接）、默认的并行启动、并行启动 + 归档。
+# 用法: scripts/startup-bench.sh [每种配置的次数，默认 5]
+set -e
+cd "$(dirname "$0")/.."
+RUNS=${1:-5}
+PORT=${GOMOKU_BENCH_PORT:-5098}
+JAR=out/gomoku.jar
+
+server_once() {
+    java $1 -Dgomoku.startupTrace=true -cp $JAR Server.Server "$PORT" 5 > out/bench-server.log 2>&1 &
+    P=$!
+    until grep -q "^startup:" out/bench-server.log; do sleep 0.05; done
+    kill $P
+    wait $P 2>/dev/null || true
+    sed -n 's/^startup: listening \([0-9]*\) ms/\1/p' out/bench-server.log
+}
+
+mean() {
+    awk '{ s += $1 } END { if (NR) printf "%.0f ms (n=%d)", s / NR, NR; else printf "n/a" }'
+}
+
+for opt in "-Xshare:auto" "-XX:SharedArchiveFile=out/server.jsa"; do
+    [ "$opt" = "-Xshare:auto" ] || [ -f out/server.jsa ] || continue
+    printf "server %-40s listening %s\n" "$opt" "$(i=0; while [ $i -lt "$RUNS" ]; do server_once "$opt"; i=$((i + 1)); done | mean)"
+done
+
+if [ -z "$DISPLAY" ] && [ "$(uname)" != "Darwin" ]; then
+    echo "没有图形环境，跳过客户端测量"
+    exit 0
+fi
+
+java -Dgomoku.turnSeconds=0 -cp $JAR Server.Server "$PORT" 5 > out/bench-server.log 2>&1 &
+SERVER=$!
+trap 'kill $SERVER 2>/dev/null' EXIT
+sleep 1
+
+client_once() {
+    java $1 -Dgomoku.startupTrace=exit -cp $JAR client.ClientApp localhost "$PORT" bench-a $2 > out/bench-client.log &
+    A=$!
+    java $1 -Dgomoku.startupTrace=exit -cp $JAR client.ClientApp localhost "$PORT" bench-b $2 > /dev/null
+    wait $A
+}
+
+run_client() {
+    label=$1; jvm=$2; flag=$3
+    rm -f out/bench-frames out/bench-paired
+    i=0
+    while [ $i -lt "$RUNS" ]; do
+        client_once "$jvm" "$flag"
+        sed -n 's/^startup: first-frame \([0-9]*\) ms/\1/p' out/bench-client.log >> out/bench-frames
+        sed -n 's/^startup: paired \([0-9]*\) ms/\1/p' out/bench-client.log >> out/bench-paired
+        i=$((i + 1))
+    done
+    printf "client %-24s first-frame %s, paired %s\n" "$label" "$(mean < out/bench-frames)" "$(mean < out/bench-paired)"
+}
+
+run_client "sync view" "-Xshare:auto" --sync-view
+run_client "parallel" "-Xshare:auto" ""
+[ -f out/client.jsa ] && run_client "parallel + AppCDS" "-XX:SharedArchiveFile=out/client.jsa" ""
+[ -f out/client.aot ] && run_client "parallel + AOT cache" "-XX:AOTCache=out/client.aot" ""
+exit 0
@@ -0,0 +1,18 @@
+#!/bin/sh
+# 生成本机测试用的自签名证书（EC P-256，SAN 为 localhost 与 127.0.0.1），仅用于回环测试。
+# 产物: out/tls/server.p12（服务器密钥库）、out/tls/trust.p12（客户端信任库），口令均为 changeit。
+# 服务器: java -Dgomoku.tls.keystore=out/tls/server.p12 -cp out Server.Server 5000
+# 客户端: java -Dgomoku.tls=true -Dgomoku.tls.truststore=out/tls/trust.p12 -cp out client.ClientApp localhost 5000 Alice
+set -e
+cd "$(dirname "$0")/.."
+DIR=out/tls
+PASS=${GOMOKU_TLS_PASSWORD:-changeit}
+mkdir -p "$DIR"
+rm -f "$DIR/server.p12" "$DIR/trust.p12" "$DIR/server.crt"
+keytool -genkeypair -alias gomoku -keyalg EC -groupname secp256r1 -validity 365 \
+    -dname "CN=localhost" -ext "SAN=dns:localhost,ip:127.0.0.1" \
+    -keystore "$DIR/server.p12" -storetype PKCS12 -storepass "$PASS" -keypass "$PASS"
+keytool -exportcert -alias gomoku -keystore "$DIR/server.p12" -storepass "$PASS" -rfc -file "$DIR/server.crt"
+keytool -importcert -noprompt -alias gomoku -file "$DIR/server.crt" \
+    -keystore "$DIR/trust.p12" -storetype PKCS12 -storepass "$PASS"
+echo "wrote $DIR/server.p12 and $DIR/trust.p12"
@@ -0,0 +1,177 @@
+package tools;
+
+import ai.Engine;
+import model.GameModel;
+import model.Move;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无界面的批量复盘分析：读入已结束的棋谱，逐步计算评估分、最佳着法、恶手标记与必胜（VCF）检测。
+ *
+ * 输入：每行一局，格式同 Move.formatList（即 GameModel.getMoves() 各步以 ';' 连接，如 "7,7,1;8,8,2"），
+ *       以 '#' 开头的行忽略。
+ * 输出：每局一行 JSON，按完成顺序流式写出（不保证与输入同序，带 game 序号）。
+ *
+ * 用法: java tools.BatchAnalysis [-in games.txt] [-out result.jsonl] [-depth 3] [-width 10] [-vcf 7] [-threads N]
+ *
+ * 并行：ForkJoinPool（工作窃取）每个工作线程复用自己的 GameModel 与 Engine；
+ * 正在分析、排队与等待写出的棋局数受信号量限制，10 万局的批次内存也保持有界。
+ */
+public class BatchAnalysis {
+    // 恶手阈值：实战着法比最佳着法低这么多分即标记
+    private static final int BLUNDER_MARGIN = 3_000;
+
+    private final int depth, width, vcfDepth;
+    private final LongAdder plies = new LongAdder();
+    private final LongAdder games = new LongAdder();
+    private final ThreadLocal<GameModel> models = ThreadLocal.withInitial(GameModel::new);
+    private final ThreadLocal<Engine> engines;
+
+    public BatchAnalysis(int depth, int width, int vcfDepth) {
+        this.depth = depth;
+        this.width = width;
+        this.vcfDepth = vcfDepth;
+        this.engines = ThreadLocal.withInitial(() -> new Engine(this.depth, this.width));
+    }
+
+    /** 分析一局，返回该局的 JSON 行。 */
+    public String analyze(int gameIndex, List<Move> moves) {
+        GameModel model = models.get();
+        Engine engine = engines.get();
+        model.reset();
+        StringBuilder sb = new StringBuilder(128 + moves.size() * 120);
+        sb.append("{\"game\":").append(gameIndex).append(",\"plies\":[");
+        int blunders = 0;
+        String error = null;
+        for (int i = 0; i < moves.size(); i++) {
+            Move mv = moves.get(i);
+            int side = mv.color;
+            if (mv.x < 0 || mv.y < 0 || mv.x >= GameModel.SIZE || mv.y >= GameModel.SIZE || model.at(mv.x, mv.y) != 0) {
+                error = "illegal move at ply " + i;
+                break;
+            }
+            Engine.Result best = engine.search(model, side, 0);
+            int[] win = engine.findVcf(model, side, vcfDepth);
+            // 实战着法与最佳着法在同一深度上评估（根节点只放这一手），二者的分值才可比
+            int played;
+            if (best != null && best.x == mv.x && best.y == mv.y) {
+                played = best.score;
+            } else {
+                played = engine.searchMove(model, side, mv.x, mv.y, 0, depth).score;
+            }
+            model.place(mv.x, mv.y, side);
+            int bestScore = (best == null) ? played : best.score;
+            boolean blunder = bestScore - played >= BLUNDER_MARGIN
+                    || (bestScore >= Engine.WIN / 2 && played < Engine.WIN / 2)
+                    || (played <= -Engine.WIN / 2 && bestScore > -Engine.WIN / 2);
+            if (blunder) blunders++;
+
+            if (i > 0) sb.append(',');
+            sb.append("{\"ply\":").append(i)
+              .append(",\"side\":").append(side)
+              .append(",\"move\":\"").append(mv.x).append(',').append(mv.y).append('"')
+              .append(",\"eval\":").append(bestScore)
+              .append(",\"best\":").append(best == null ? "null" : "\"" + best.x + "," + best.y + "\"")
+              .append(",\"played\":").append(played)
+              .append(",\"blunder\":").append(blunder)
+              .append(",\"forcedWin\":").append(win == null ? "null" : "\"" + win[0] + "," + win[1] + "\"")
+              .append('}');
+            plies.increment();
+        }
+        sb.append("],\"blunders\":").append(blunders);
+        if (error != null) sb.append(",\"error\":\"").append(error).append('"');
+        sb.append('}');
+        games.increment();
+        return sb.toString();
+    }
+
+    /** 读取 in 中的全部棋局并行分析，结果逐局写入 out。 */
+    public void run(BufferedReader in, PrintWriter out, int threads) throws IOException, InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        int maxInFlight = threads * 4;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        long start = System.nanoTime();
+        Thread progress = startProgressReporter(start);
+        String line;
+        int index = 0;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            final int gameIndex = index++;
+            final String record = line;
+            inFlight.acquire();
+            pool.execute(() -> {
+                // 结果写出后才释放许可：信号量限制的是尚未写出的棋局数（含已算完、等待写出的结果）
+                try {
+                    String result;
+                    try {
+                        result = analyze(gameIndex, Move.parseList(record));
+                    } catch (RuntimeException e) {
+                        result = "{\"game\":" + gameIndex + ",\"error\":\"" + e.toString().replace('"', '\'') + "\"}";
+                    }
+                    synchronized (out) {
+                        out.println(result);
+                    }
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+        inFlight.acquire(maxInFlight);
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+        progress.interrupt();
+        out.flush();
+        double secs = (System.nanoTime() - start) / 1e9;
+        System.err.printf("Analyzed %d games, %d plies in %.1fs: %.1f plies/sec on %d threads%n",
+                games.sum(), plies.sum(), secs, plies.sum() / secs, threads);
+    }
+
+    private Thread startProgressReporter(long start) {
+        Thread t = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(5000);
+                    double secs = (System.nanoTime() - start) / 1e9;
+                    System.err.printf("... %d games, %d plies, %.1f plies/sec%n", games.sum(), plies.sum(), plies.sum() / secs);
+                }
+            } catch (InterruptedException e) {
+                // 结束
+            }
+        }, "analysis-progress");
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String inPath = null, outPath = null;
+        int depth = 3, width = 10, vcf = 7, threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "-in": inPath = args[i + 1]; break;
+                case "-out": outPath = args[i + 1]; break;
+                case "-depth": depth = Integer.parseInt(args[i + 1]); break;
+                case "-width": width = Integer.parseInt(args[i + 1]); break;
+                case "-vcf": vcf = Integer.parseInt(args[i + 1]); break;
+                case "-threads": threads = Integer.parseInt(args[i + 1]); break;
+                default:
+                    System.err.println("未知参数: " + args[i]);
+                    System.exit(1);
+            }
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                inPath == null ? System.in : new FileInputStream(inPath), StandardCharsets.UTF_8));
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                outPath == null ? System.out : new FileOutputStream(outPath), StandardCharsets.UTF_8)));
+        new BatchAnalysis(depth, width, vcf).run(in, out, threads);
+        out.close();
+    }
+}
@@ -0,0 +1,176 @@
+package tools;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 聊天洪泛下的走棋延迟测量（需先启动 Server，且大厅中没有其他等待者）。
+ *
+ * 连接两个客户端并配对：flooder 尽可能快地发送聊天，同时每隔 moveMillis 发送一步 MOVE；
+ * victim 以 readKBps 的速度慢速读取（接收缓冲区调小），记录每步 MOVE 从发出到收到的延迟。
+ * 分别对 -Dgomoku.chatLanes=false -Dgomoku.chatRate=0（无分道、无限流）与默认配置的服务器各跑一次即可对比。
+ *
+ * 用法: java tools.ChatFloodBench [host] [port] [-seconds 10] [-chatBytes 400] [-moveMillis 50] [-readKBps 256]
+ */
+public class ChatFloodBench {
+    private static final int SIZE = 15;
+
+    public static void main(String[] args) throws Exception {
+        String host = "localhost";
+        int port = 5000, seconds = 10, chatBytes = 400, moveMillis = 50, readKBps = 256;
+        List<String> positional = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-seconds": seconds = Integer.parseInt(args[++i]); break;
+                case "-chatBytes": chatBytes = Integer.parseInt(args[++i]); break;
+                case "-moveMillis": moveMillis = Integer.parseInt(args[++i]); break;
+                case "-readKBps": readKBps = Integer.parseInt(args[++i]); break;
+                default: positional.add(args[i]);
+            }
+        }
+        if (positional.size() > 0) host = positional.get(0);
+        if (positional.size() > 1) port = Integer.parseInt(positional.get(1));
+
+        Socket flooder = new Socket(host, port);
+        Socket victim = new Socket();
+        // 小接收缓冲区 + 慢速读取，模拟网络较差的对手
+        victim.setReceiveBufferSize(4096);
+        victim.connect(new InetSocketAddress(host, port));
+        OutputStream fOut = new BufferedOutputStream(flooder.getOutputStream());
+        OutputStream vOut = victim.getOutputStream();
+        write(fOut, "NAME:flooder");
+        write(vOut, "NAME:victim");
+
+        CountDownLatch started = new CountDownLatch(2);
+        long[] sentAt = new long[SIZE * SIZE];
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong chatsSent = new AtomicLong(), chatsReceived = new AtomicLong(), chatsDropped = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        final int kbps = readKBps;
+
+        // flooder 的读取：应答 PING，统计被拒绝的聊天
+        Thread fReader = daemon(() -> {
+            BufferedReader r = reader(flooder);
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.startsWith("START:")) started.countDown();
+                else if (line.equals("PING")) write(fOut, "PONG");
+                else if (line.startsWith("CHAT_REJECTED:")) rejected.incrementAndGet();
+            }
+        });
+        // victim 的慢速读取：按字节数节流
+        Thread vReader = daemon(() -> {
+            BufferedReader r = reader(victim);
+            String line;
+            long bytes = 0;
+            while ((line = r.readLine()) != null) {
+                long now = System.nanoTime();
+                if (line.startsWith("START:")) {
+                    started.countDown();
+                } else if (line.equals("PING")) {
+                    write(vOut, "PONG");
+                } else if (line.startsWith("MOVE:")) {
+                    String[] p = line.substring(5).split(",");
+                    int cell = Integer.parseInt(p[1].trim()) * SIZE + Integer.parseInt(p[0].trim());
+                    synchronized (sentAt) {
+                        if (sentAt[cell] != 0) latencies.add(now - sentAt[cell]);
+                    }
+                } else if (line.startsWith("CHAT:")) {
+                    chatsReceived.incrementAndGet();
+                } else if (line.startsWith("CHAT_DROPPED:")) {
+                    chatsDropped.addAndGet(Long.parseLong(line.substring("CHAT_DROPPED:".length())));
+                }
+                bytes += line.length() + 1;
+                if (bytes >= 4096) {
+                    Thread.sleep(bytes * 1000 / (kbps * 1024L));
+                    bytes = 0;
+                }
+            }
+        });
+        fReader.start();
+        vReader.start();
+        if (!started.await(10, TimeUnit.SECONDS)) {
+            System.err.println("未能配对：请确认服务器已启动且大厅为空。");
+            System.exit(1);
+        }
+
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        StringBuilder pad = new StringBuilder("CHAT:");
+        while (pad.length() < chatBytes) pad.append('x');
+        byte[] chat = (pad + "\n").getBytes(StandardCharsets.UTF_8);
+        Thread flood = daemon(() -> {
+            while (System.nanoTime() < end) {
+                synchronized (fOut) {
+                    fOut.write(chat);
+                    fOut.flush();
+                }
+                chatsSent.incrementAndGet();
+            }
+        });
+        flood.start();
+
+        // 走棋：每步一个不同的格子，格子下标即序号
+        for (int cell = 0; cell < SIZE * SIZE && System.nanoTime() < end; cell++) {
+            synchronized (sentAt) {
+                sentAt[cell] = System.nanoTime();
+            }
+            write(fOut, "MOVE:" + (cell % SIZE) + "," + (cell / SIZE));
+            Thread.sleep(moveMillis);
+        }
+        flood.join(TimeUnit.SECONDS.toMillis(seconds) + 1000);
+        // 给积压的消息一点时间到达
+        Thread.sleep(2000);
+        flooder.close();
+        victim.close();
+
+        List<Long> l = new ArrayList<>(latencies);
+        Collections.sort(l);
+        System.out.printf("chat sent %d, rejected notices %d, received %d, dropped (CHAT_DROPPED) %d%n",
+                chatsSent.get(), rejected.get(), chatsReceived.get(), chatsDropped.get());
+        if (l.isEmpty()) {
+            System.out.println("no MOVE received");
+            return;
+        }
+        System.out.printf("moves received %d: p50 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                l.size(), pct(l, 0.5), pct(l, 0.99), l.get(l.size() - 1) / 1e6);
+    }
+
+    private static double pct(List<Long> sorted, double q) {
+        return sorted.get(Math.min(sorted.size() - 1, (int) (q * sorted.size()))) / 1e6;
+    }
+
+    private static void write(OutputStream out, String line) throws IOException {
+        synchronized (out) {
+            out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+    }
+
+    private static BufferedReader reader(Socket s) throws IOException {
+        return new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    interface IoTask {
+        void run() throws Exception;
+    }
+
+    private static Thread daemon(IoTask task) {
+        Thread t = new Thread(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                // 连接关闭，结束
+            }
+        });
+        t.setDaemon(true);
+        return t;
+    }
+}
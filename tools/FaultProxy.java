@@ -0,0 +1,499 @@
+package tools;
+
+import Server.LatencyHistogram;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 本机 TCP 故障注入代理：位于 ClientApp / 机器人与 Server 之间，只监听回环地址。
+ *
+ * 每个连接的两个方向各有一个读线程与一个写线程，读到的数据段先进入延迟队列，到期后再写出，
+ * 可注入：固定延迟与抖动（保持字节顺序）、带宽上限、把一次写出切成若干小片（半包）、
+ * 以一定概率或由脚本触发的连接重置（RST，两端同时断开）、以及在代理出向套接字上打开 Nagle（合并小包）。
+ *
+ * 代理按行嗅探协议消息（不修改内容）：
+ * - 走棋延迟：MOVE:<seq>:x,y 从一方到达代理，到同一行写给同会话另一方的时间（含两段注入延迟）；
+ * - 确认往返：同一连接上 MOVE:<seq> 到 ACK:<seq> 的时间；
+ * - 各类消息计数：NACK、SYNC、SYNC_REQUEST、UNDO、RESET、RESUME、RESUMED、RESUME_FAILED 等。
+ *
+ * 场景脚本每行为 "<秒> <参数> <值> ..." 或 "<秒> <动作>"，# 开头为注释。
+ * 参数：delay、jitter（毫秒）、bandwidth（KB/s，0 不限）、split（字节，0 不切分）、resetRate（每段数据的概率）、nagle（true/false）；
+ * 动作：clear（清除全部故障）、reset（立即重置所有连接）、report（打印统计）、end（结束）。
+ *
+ * 用法: java tools.FaultProxy <listenPort> <targetHost> <targetPort> [-delay 0] [-jitter 0] [-bandwidth 0]
+ *       [-split 0] [-resetRate 0] [-nagle] [-scenario file] [-report 10]
+ */
+public class FaultProxy implements Closeable {
+    private static final int SESSION_ID_LENGTH = 16;
+    private static final int MAX_SNIFF = 128;
+
+    /** 当前生效的故障参数；场景脚本随时修改，各连接在处理下一段数据时读取。 */
+    public static final class Faults {
+        public volatile int delayMillis, jitterMillis;
+        public volatile int bandwidthKBps;
+        public volatile int splitBytes;
+        public volatile double resetRate;
+        public volatile boolean nagle;
+
+        public void clear() {
+            delayMillis = jitterMillis = bandwidthKBps = splitBytes = 0;
+            resetRate = 0;
+            nagle = false;
+        }
+
+        public void copyFrom(Faults f) {
+            delayMillis = f.delayMillis;
+            jitterMillis = f.jitterMillis;
+            bandwidthKBps = f.bandwidthKBps;
+            splitBytes = f.splitBytes;
+            resetRate = f.resetRate;
+            nagle = f.nagle;
+        }
+
+        /** 按名称设置一个参数；未知名称返回 false。 */
+        public boolean set(String key, String value) {
+            switch (key) {
+                case "delay": delayMillis = Integer.parseInt(value); return true;
+                case "jitter": jitterMillis = Integer.parseInt(value); return true;
+                case "bandwidth": bandwidthKBps = Integer.parseInt(value); return true;
+                case "split": splitBytes = Integer.parseInt(value); return true;
+                case "resetRate": resetRate = Double.parseDouble(value); return true;
+                case "nagle": nagle = Boolean.parseBoolean(value); return true;
+                default: return false;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "delay=" + delayMillis + "ms jitter=" + jitterMillis + "ms bandwidth="
+                    + (bandwidthKBps > 0 ? bandwidthKBps + "KB/s" : "unlimited") + " split=" + splitBytes
+                    + " resetRate=" + resetRate + " nagle=" + nagle;
+        }
+    }
+
+    /** 代理观察到的统计。 */
+    public static final class Stats {
+        public final LatencyHistogram moveLatency = new LatencyHistogram();
+        public final LatencyHistogram ackRtt = new LatencyHistogram();
+        private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+        void count(String name) {
+            counts.computeIfAbsent(name, k -> new LongAdder()).increment();
+        }
+
+        public long get(String name) {
+            LongAdder a = counts.get(name);
+            return a == null ? 0 : a.sum();
+        }
+
+        public void print(PrintStream out) {
+            out.printf("proxy: move latency n=%d p50 %.1f ms p99 %.1f ms; ack rtt n=%d p50 %.1f ms p99 %.1f ms%n",
+                    moveLatency.count(), moveLatency.quantile(0.5) / 1e6, moveLatency.quantile(0.99) / 1e6,
+                    ackRtt.count(), ackRtt.quantile(0.5) / 1e6, ackRtt.quantile(0.99) / 1e6);
+            StringBuilder sb = new StringBuilder("proxy:");
+            for (Map.Entry<String, LongAdder> e : new TreeMap<>(counts).entrySet()) {
+                sb.append(' ').append(e.getKey()).append('=').append(e.getValue().sum());
+            }
+            out.println(sb);
+        }
+    }
+
+    public final Faults faults = new Faults();
+    public final Stats stats = new Stats();
+
+    private final ServerSocket listener;
+    private final InetSocketAddress target;
+    private final Set<Link> links = ConcurrentHashMap.newKeySet();
+    // 会话号 + MOVE 行 -> 到达代理的时刻，用于配对同一步在另一方的送达
+    private final Map<String, Long> movesInFlight = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    /** 在回环地址上监听 listenPort（0 表示任选端口），转发到 target。 */
+    public FaultProxy(int listenPort, InetSocketAddress target) throws IOException {
+        this.listener = new ServerSocket(listenPort, 50, InetAddress.getLoopbackAddress());
+        this.target = target;
+        Thread t = new Thread(this::acceptLoop, "proxy-accept");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public int getPort() {
+        return listener.getLocalPort();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            Socket client;
+            try {
+                client = listener.accept();
+            } catch (IOException e) {
+                return;
+            }
+            try {
+                Socket server = new Socket();
+                server.connect(target, 5000);
+                Link link = new Link(client, server);
+                links.add(link);
+                stats.count("connections");
+                link.start();
+            } catch (IOException e) {
+                System.err.println("proxy: cannot reach " + target + ": " + e.getMessage());
+                closeQuietly(client);
+            }
+        }
+    }
+
+    /** 立即以 RST 断开当前所有连接。 */
+    public void resetAll() {
+        for (Link l : links) l.reset();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        closeQuietly(listener);
+        for (Link l : links) l.close();
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try {
+            c.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static final class Chunk {
+        static final Chunk EOF = new Chunk(null, 0);
+        final byte[] data;
+        final long due;
+
+        Chunk(byte[] data, long due) {
+            this.data = data;
+            this.due = due;
+        }
+    }
+
+    /** 一对套接字（客户端侧、服务器侧）。 */
+    private final class Link {
+        final Socket client, server;
+        volatile String session;
+        // ACK 往返：本连接上 MOVE:<seq> 到达代理的时刻
+        final Map<Integer, Long> unacked = new ConcurrentHashMap<>();
+        private volatile boolean done;
+
+        Link(Socket client, Socket server) {
+            this.client = client;
+            this.server = server;
+        }
+
+        void start() throws IOException {
+            client.setTcpNoDelay(true);
+            server.setTcpNoDelay(true);
+            new Pump(this, client, server, true).start();
+            new Pump(this, server, client, false).start();
+        }
+
+        void reset() {
+            if (done) return;
+            stats.count("resets");
+            try {
+                client.setSoLinger(true, 0);
+                server.setSoLinger(true, 0);
+            } catch (IOException ignored) {
+            }
+            close();
+        }
+
+        void close() {
+            if (done) return;
+            done = true;
+            closeQuietly(client);
+            closeQuietly(server);
+            links.remove(this);
+        }
+
+        // 客户端 -> 服务器方向的一行，在读到时调用
+        void upstream(String line, long now) {
+            String op = opcode(line);
+            stats.count(">" + op);
+            if (op.equals("RESUME")) {
+                String[] p = line.split(":");
+                if (p.length > 1 && p[1].length() > SESSION_ID_LENGTH) session = p[1].substring(0, SESSION_ID_LENGTH);
+            } else if (op.equals("MOVE")) {
+                int colon = line.indexOf(':', 5);
+                if (colon < 0) return;
+                try {
+                    unacked.put(Integer.parseInt(line.substring(5, colon)), now);
+                } catch (NumberFormatException e) {
+                    return;
+                }
+                if (session != null) movesInFlight.put(session + line, now);
+            }
+        }
+
+        // 服务器 -> 客户端方向的一行，在写给客户端之后调用
+        void downstream(String line, long now) {
+            String op = opcode(line);
+            stats.count("<" + op);
+            if (op.equals("SESSION")) {
+                String[] p = line.split(":");
+                if (p.length > 1 && p[1].length() > SESSION_ID_LENGTH) session = p[1].substring(0, SESSION_ID_LENGTH);
+            } else if (op.equals("MOVE")) {
+                Long t = (session == null) ? null : movesInFlight.remove(session + line);
+                if (t != null) stats.moveLatency.record(now - t);
+            } else if (op.equals("ACK")) {
+                try {
+                    Long t = unacked.remove(Integer.parseInt(line.substring(4)));
+                    if (t != null) stats.ackRtt.record(now - t);
+                } catch (NumberFormatException ignored) {
+                }
+            } else if (op.equals("RESET") || op.equals("UNDO") || op.equals("SYNC")) {
+                // 棋谱被截断或重写后，旧序号不会再被确认
+                unacked.clear();
+            }
+        }
+    }
+
+    private static String opcode(String line) {
+        int colon = line.indexOf(':');
+        return colon < 0 ? line : line.substring(0, colon);
+    }
+
+    /** 单方向转发：读线程把数据段放进延迟队列，写线程按到期时间、带宽与切片写出。 */
+    private final class Pump {
+        final Link link;
+        final Socket from, to;
+        final boolean upstream;
+        final LinkedBlockingQueue<Chunk> queue = new LinkedBlockingQueue<>();
+        final ByteArrayOutputStream readLine = new ByteArrayOutputStream(), writeLine = new ByteArrayOutputStream();
+        long lastDue, nextFree;
+        boolean nagleOn;
+
+        Pump(Link link, Socket from, Socket to, boolean upstream) {
+            this.link = link;
+            this.from = from;
+            this.to = to;
+            this.upstream = upstream;
+        }
+
+        void start() {
+            String dir = upstream ? "up" : "down";
+            Thread r = new Thread(this::readLoop, "proxy-" + dir + "-read");
+            Thread w = new Thread(this::writeLoop, "proxy-" + dir + "-write");
+            r.setDaemon(true);
+            w.setDaemon(true);
+            r.start();
+            w.start();
+        }
+
+        void readLoop() {
+            byte[] buf = new byte[8192];
+            try {
+                InputStream in = from.getInputStream();
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    long now = System.nanoTime();
+                    if (upstream) sniff(readLine, buf, 0, n, now);
+                    if (faults.resetRate > 0 && ThreadLocalRandom.current().nextDouble() < faults.resetRate) {
+                        link.reset();
+                        break;
+                    }
+                    int jitter = faults.jitterMillis;
+                    long delay = TimeUnit.MILLISECONDS.toNanos(faults.delayMillis
+                            + (jitter > 0 ? ThreadLocalRandom.current().nextInt(jitter + 1) : 0));
+                    // 抖动不能让后读到的数据先写出（TCP 保序）
+                    lastDue = Math.max(now + delay, lastDue);
+                    byte[] data = new byte[n];
+                    System.arraycopy(buf, 0, data, 0, n);
+                    queue.add(new Chunk(data, lastDue));
+                }
+                queue.add(Chunk.EOF);
+            } catch (IOException e) {
+                link.close();
+                queue.add(Chunk.EOF);
+            }
+        }
+
+        void writeLoop() {
+            try {
+                OutputStream out = to.getOutputStream();
+                while (true) {
+                    Chunk c = queue.take();
+                    if (c == Chunk.EOF) break;
+                    sleepUntil(c.due);
+                    boolean nagle = faults.nagle;
+                    if (nagle != nagleOn) {
+                        to.setTcpNoDelay(!nagle);
+                        nagleOn = nagle;
+                    }
+                    int split = faults.splitBytes;
+                    for (int off = 0; off < c.data.length; ) {
+                        int len = c.data.length - off;
+                        if (split > 0) len = Math.min(len, 1 + ThreadLocalRandom.current().nextInt(split));
+                        throttle(len);
+                        out.write(c.data, off, len);
+                        if (!upstream) sniff(writeLine, c.data, off, len, System.nanoTime());
+                        off += len;
+                        // 片段之间稍作停顿，使接收方大概率分多次读到
+                        if (split > 0 && off < c.data.length) LockSupport.parkNanos(200_000);
+                    }
+                }
+                to.shutdownOutput();
+            } catch (IOException | InterruptedException e) {
+                link.close();
+            }
+        }
+
+        // 带宽上限：按已写出的字节推算下一次可写的时刻
+        private void throttle(int len) {
+            int kbps = faults.bandwidthKBps;
+            if (kbps <= 0) return;
+            long now = System.nanoTime();
+            long start = Math.max(now, nextFree);
+            nextFree = start + len * 1_000_000_000L / (kbps * 1024L);
+            sleepUntil(start);
+        }
+
+        private void sleepUntil(long due) {
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) LockSupport.parkNanos(wait);
+        }
+
+        private void sniff(ByteArrayOutputStream line, byte[] b, int off, int len, long now) {
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') {
+                    String s = new String(line.toByteArray(), StandardCharsets.UTF_8);
+                    line.reset();
+                    if (upstream) link.upstream(s, now);
+                    else link.downstream(s, now);
+                } else if (line.size() < MAX_SNIFF) {
+                    // 超长的行（聊天）只保留前缀，足够识别操作码
+                    line.write(b[i]);
+                }
+            }
+        }
+    }
+
+    /** 场景脚本中的一步。 */
+    public static final class Step {
+        public final long atMillis;
+        public final String[] words;
+
+        Step(long atMillis, String[] words) {
+            this.atMillis = atMillis;
+            this.words = words;
+        }
+    }
+
+    public static List<Step> parseScenario(List<String> lines) {
+        List<Step> steps = new ArrayList<>();
+        for (String raw : lines) {
+            String line = raw.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] w = line.split("\\s+");
+            if (w.length < 2) throw new IllegalArgumentException("bad scenario line: " + raw);
+            String[] words = new String[w.length - 1];
+            System.arraycopy(w, 1, words, 0, words.length);
+            steps.add(new Step((long) (Double.parseDouble(w[0]) * 1000), words));
+        }
+        return steps;
+    }
+
+    /**
+     * 按时间执行场景（阻塞到 end 或脚本结束）；返回 true 表示遇到 end。
+     * 每一步执行后打印一行，便于把统计与故障阶段对应起来。
+     */
+    public boolean runScenario(List<Step> steps, PrintStream log) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        for (Step s : steps) {
+            long wait = start + s.atMillis - System.currentTimeMillis();
+            if (wait > 0) Thread.sleep(wait);
+            for (int i = 0; i < s.words.length; i++) {
+                String w = s.words[i];
+                switch (w) {
+                    case "clear": faults.clear(); break;
+                    case "reset": resetAll(); break;
+                    case "report": stats.print(log); break;
+                    case "end": return true;
+                    default:
+                        if (i + 1 >= s.words.length || !faults.set(w, s.words[++i])) {
+                            throw new IllegalArgumentException("bad scenario step at " + s.atMillis + "ms: " + w);
+                        }
+                }
+            }
+            log.printf("[%6.1fs] %s -> %s%n", s.atMillis / 1000.0, String.join(" ", s.words), faults);
+        }
+        return false;
+    }
+
+    /** 解析 -delay 等故障参数（与场景参数同名），返回用掉的参数个数；不是故障参数时返回 0。 */
+    public static int parseFaultOption(Faults faults, String[] args, int i) {
+        if (!args[i].startsWith("-")) return 0;
+        String key = args[i].substring(1);
+        if (key.equals("nagle")) {
+            faults.nagle = true;
+            return 1;
+        }
+        return (i + 1 < args.length && faults.set(key, args[i + 1])) ? 2 : 0;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("用法: java tools.FaultProxy <listenPort> <targetHost> <targetPort> [-delay ms] [-jitter ms]"
+                    + " [-bandwidth KBps] [-split bytes] [-resetRate p] [-nagle] [-scenario file] [-report seconds]");
+            return;
+        }
+        int listenPort = Integer.parseInt(args[0]);
+        InetSocketAddress target = new InetSocketAddress(args[1], Integer.parseInt(args[2]));
+        FaultProxy proxy = new FaultProxy(listenPort, target);
+        String scenario = null;
+        int report = 10;
+        for (int i = 3; i < args.length; i++) {
+            int used;
+            if (args[i].equals("-scenario")) scenario = args[++i];
+            else if (args[i].equals("-report")) report = Integer.parseInt(args[++i]);
+            else if ((used = parseFaultOption(proxy.faults, args, i)) > 0) i += used - 1;
+            else throw new IllegalArgumentException("unknown option " + args[i]);
+        }
+        System.out.println("proxy 127.0.0.1:" + proxy.getPort() + " -> " + target + " (" + proxy.faults + ")");
+        if (report > 0) {
+            final long period = report * 1000L;
+            Thread t = new Thread(() -> {
+                try {
+                    while (true) {
+                        Thread.sleep(period);
+                        proxy.stats.print(System.out);
+                    }
+                } catch (InterruptedException ignored) {
+                }
+            }, "proxy-report");
+            t.setDaemon(true);
+            t.start();
+        }
+        if (scenario == null) {
+            Thread.currentThread().join();
+            return;
+        }
+        proxy.runScenario(parseScenario(Files.readAllLines(Paths.get(scenario), StandardCharsets.UTF_8)), System.out);
+        proxy.stats.print(System.out);
+        proxy.close();
+    }
+}
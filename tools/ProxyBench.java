@@ -0,0 +1,431 @@
+package tools;
+
+import Server.LatencyHistogram;
+import model.GameModel;
+import model.Move;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 经 FaultProxy 的协议测试（需先启动 Server，且大厅中没有其他等待者）。
+ *
+ * 在进程内启动一个代理，再让若干对无界面机器人经代理对弈。机器人的协议处理与 GameController 相同：
+ * 乐观落子 MOVE:<seq>:x,y 等待 ACK/NACK，序号不符时 SYNC_REQUEST，悔棋与重置以服务器广播为准，
+ * 断线后用 RESUME 在宽限期内重连。可按概率发起悔棋、每若干步重置一次，用来观察这些功能在故障下的表现。
+ *
+ * 结束时先停止走棋并清除故障，等待 settle 秒后逐会话比较双方棋谱（步数与 historyHash），输出：
+ * - 走棋端到端延迟（发出 MOVE 到对方机器人收到），以及代理自己看到的延迟与确认往返；
+ * - NACK、SYNC_REQUEST、SYNC、悔棋、重置、重连成功/失败次数；
+ * - 一致的会话数 / 总会话数（因重连失败而结束的会话单独计数）。
+ *
+ * 用法: java tools.ProxyBench [host] [port] [-pairs 4] [-seconds 30] [-think 20] [-undoRate 0.02] [-resetEvery 60]
+ *       [-settle 3] [-seed 1] [-scenario file] [故障参数，同 FaultProxy：-delay -jitter -bandwidth -split -resetRate -nagle]
+ */
+public class ProxyBench {
+    private static final int SIZE = GameModel.SIZE;
+    private static final int SESSION_ID_LENGTH = 16;
+
+    private final InetSocketAddress proxyAddr;
+    private final double undoRate;
+    private final int resetEvery;
+    // 会话号:序号:x,y -> 发出时刻
+    private final Map<String, Long> sentAt = new ConcurrentHashMap<>();
+    private final LatencyHistogram moveLatency = new LatencyHistogram();
+    private final LatencyHistogram ackRtt = new LatencyHistogram();
+    private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+    private volatile boolean stopped;
+
+    private ProxyBench(InetSocketAddress proxyAddr, double undoRate, int resetEvery) {
+        this.proxyAddr = proxyAddr;
+        this.undoRate = undoRate;
+        this.resetEvery = resetEvery;
+    }
+
+    private void count(String name) {
+        counts.computeIfAbsent(name, k -> new LongAdder()).increment();
+    }
+
+    private long get(String name) {
+        LongAdder a = counts.get(name);
+        return a == null ? 0 : a.sum();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = "localhost";
+        int port = 5000, pairs = 4, seconds = 30, think = 20, resetEvery = 60, settle = 3;
+        double undoRate = 0.02;
+        long seed = 1;
+        String scenario = null;
+        FaultProxy.Faults faults = new FaultProxy.Faults();
+        List<String> positional = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            int used;
+            switch (args[i]) {
+                case "-pairs": pairs = Integer.parseInt(args[++i]); break;
+                case "-seconds": seconds = Integer.parseInt(args[++i]); break;
+                case "-think": think = Integer.parseInt(args[++i]); break;
+                case "-undoRate": undoRate = Double.parseDouble(args[++i]); break;
+                case "-resetEvery": resetEvery = Integer.parseInt(args[++i]); break;
+                case "-settle": settle = Integer.parseInt(args[++i]); break;
+                case "-seed": seed = Long.parseLong(args[++i]); break;
+                case "-scenario": scenario = args[++i]; break;
+                default:
+                    if ((used = FaultProxy.parseFaultOption(faults, args, i)) > 0) i += used - 1;
+                    else positional.add(args[i]);
+            }
+        }
+        if (positional.size() > 0) host = positional.get(0);
+        if (positional.size() > 1) port = Integer.parseInt(positional.get(1));
+
+        FaultProxy proxy = new FaultProxy(0, new InetSocketAddress(host, port));
+        ProxyBench bench = new ProxyBench(new InetSocketAddress("127.0.0.1", proxy.getPort()), undoRate, resetEvery);
+        List<Bot> bots = new ArrayList<>();
+        // 成对依次连接，保证相邻两个机器人被配成一局
+        for (int i = 0; i < pairs * 2; i++) {
+            Bot b = bench.new Bot("bot" + i, new Random(seed * 1000 + i));
+            b.connect();
+            bots.add(b);
+            if (i % 2 == 1 && !b.awaitStart(10_000)) {
+                System.err.println("未能配对：请确认服务器已启动且大厅为空。");
+                System.exit(1);
+            }
+        }
+        // 配对阶段不注入故障
+        proxy.faults.copyFrom(faults);
+        System.out.println("faults: " + proxy.faults);
+
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+        for (Bot b : bots) ticker.scheduleWithFixedDelay(b::tick, think, think, TimeUnit.MILLISECONDS);
+        long t0 = System.nanoTime();
+        if (scenario != null) {
+            proxy.runScenario(FaultProxy.parseScenario(Files.readAllLines(Paths.get(scenario), StandardCharsets.UTF_8)),
+                    System.out);
+        } else {
+            Thread.sleep(seconds * 1000L);
+        }
+        double elapsed = (System.nanoTime() - t0) / 1e9;
+
+        // 停止走棋、清除故障，等在途消息与重连完成后再比较棋谱
+        bench.stopped = true;
+        proxy.faults.clear();
+        Thread.sleep(settle * 1000L);
+        ticker.shutdownNow();
+        bench.report(bots, elapsed);
+        proxy.stats.print(System.out);
+        for (Bot b : bots) b.close();
+        proxy.close();
+    }
+
+    private void report(List<Bot> bots, double elapsed) {
+        Map<String, List<Bot>> sessions = new HashMap<>();
+        for (Bot b : bots) {
+            String token = b.startToken;
+            if (token != null) sessions.computeIfAbsent(token.substring(0, SESSION_ID_LENGTH), k -> new ArrayList<>()).add(b);
+        }
+        int consistent = 0, lost = 0;
+        for (Map.Entry<String, List<Bot>> e : sessions.entrySet()) {
+            List<Bot> pair = e.getValue();
+            if (pair.size() != 2) continue;
+            Bot a = pair.get(0), b = pair.get(1);
+            if (a.sessionToken == null || b.sessionToken == null) {
+                lost++;
+                continue;
+            }
+            long ha, hb;
+            int na, nb;
+            synchronized (a) {
+                na = a.model.getMoveCount();
+                ha = Move.historyHash(a.model.getMoves(), na);
+            }
+            synchronized (b) {
+                nb = b.model.getMoveCount();
+                hb = Move.historyHash(b.model.getMoves(), nb);
+            }
+            if (na == nb && ha == hb) {
+                consistent++;
+            } else {
+                System.out.printf("session %s diverged: %s %d moves / %s %d moves%n", e.getKey(), a.name, na, b.name, nb);
+            }
+        }
+        long moves = get("acked");
+        System.out.printf("%.1fs: %d moves acked (%.0f moves/s)%n", elapsed, moves, moves / elapsed);
+        System.out.printf("move latency n=%d p50 %.1f ms p99 %.1f ms max-bucket %.1f ms; ack rtt p50 %.1f ms p99 %.1f ms%n",
+                moveLatency.count(), moveLatency.quantile(0.5) / 1e6, moveLatency.quantile(0.99) / 1e6,
+                moveLatency.quantile(1.0) / 1e6, ackRtt.quantile(0.5) / 1e6, ackRtt.quantile(0.99) / 1e6);
+        System.out.printf("nack %d, sync_request %d, sync %d, undo %d, undo_stale %d, reset %d, reset_stale %d, "
+                        + "resumed %d, resume_failed %d, not delivered as MOVE %d%n",
+                get("nack"), get("sync_request"), get("sync"), get("undo"), get("undo_stale"), get("reset"),
+                get("reset_stale"), get("resumed"), get("resume_failed"), sentAt.size());
+        System.out.printf("sessions consistent %d / %d (lost %d)%n", consistent, sessions.size(), lost);
+    }
+
+    /** 无界面机器人：协议处理与 GameController 一致，随机选点。 */
+    private final class Bot {
+        final String name;
+        final Random rnd;
+        final GameModel model = new GameModel();
+        private final Object startLock = new Object();
+        private Socket socket;
+        private volatile PrintWriter out;
+        volatile String sessionToken;
+        // 首次 SESSION 的令牌（结束时按会话分组用，重连失败后也保留）
+        volatile String startToken;
+        private volatile long graceMillis;
+        private int myColor;
+        private int pendingSeq = -1;
+        // 服务器局号，发起重置时带上
+        private int game;
+        private long pendingAt;
+        private boolean resetRequested, undoRequested, over;
+
+        Bot(String name, Random rnd) {
+            this.name = name;
+            this.rnd = rnd;
+        }
+
+        void connect() throws IOException {
+            open("NAME:" + name);
+            Thread t = new Thread(this::listen, name);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        boolean awaitStart(long millis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + millis;
+            synchronized (startLock) {
+                while (startToken == null) {
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) return false;
+                    startLock.wait(wait);
+                }
+            }
+            return true;
+        }
+
+        private void open(String hello) throws IOException {
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(proxyAddr, 5000);
+            PrintWriter w = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+            w.println(hello);
+            out = w;
+        }
+
+        private void send(String line) {
+            PrintWriter w = out;
+            if (w != null) w.println(line);
+        }
+
+        private void listen() {
+            while (true) {
+                try {
+                    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        if (line.equals("PING")) send("PONG");
+                        else handle(line);
+                    }
+                } catch (IOException e) {
+                    // 连接被重置，按会话令牌重连
+                }
+                out = null;
+                if (sessionToken == null || !reconnect()) return;
+            }
+        }
+
+        private boolean reconnect() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+            long deadline = System.currentTimeMillis() + graceMillis;
+            long backoff = 100;
+            while (System.currentTimeMillis() < deadline && sessionToken != null) {
+                try {
+                    String hello;
+                    synchronized (this) {
+                        int n = model.getMoveCount();
+                        hello = "RESUME:" + sessionToken + ":" + n + ":" + Move.formatHash(Move.historyHash(model.getMoves(), n));
+                    }
+                    open(hello);
+                    return true;
+                } catch (IOException e) {
+                    try {
+                        Thread.sleep(backoff);
+                    } catch (InterruptedException ie) {
+                        return false;
+                    }
+                    backoff = Math.min(backoff * 2, 2000);
+                }
+            }
+            sessionToken = null;
+            return false;
+        }
+
+        void close() {
+            sessionToken = null;
+            try {
+                if (socket != null) socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        private String sessionId() {
+            String t = startToken;
+            return t == null ? "" : t.substring(0, SESSION_ID_LENGTH);
+        }
+
+        private synchronized void handle(String line) {
+            long now = System.nanoTime();
+            if (line.startsWith("START:COLOR:")) {
+                myColor = line.endsWith("BLACK") ? 1 : 2;
+                game = 0;
+                model.reset();
+            } else if (line.startsWith("SESSION:")) {
+                String[] p = line.split(":");
+                graceMillis = Long.parseLong(p[2]) * 1000;
+                sessionToken = p[1];
+                synchronized (startLock) {
+                    startToken = p[1];
+                    startLock.notifyAll();
+                }
+            } else if (line.startsWith("RESUMED:")) {
+                count("resumed");
+                game = Integer.parseInt(line.substring(line.lastIndexOf(':') + 1));
+            } else if (line.equals("PEER_RESUMED")) {
+                // 对方断线期间发出的悔棋请求已被丢弃
+                undoRequested = false;
+            } else if (line.startsWith("GAME_OVER:")) {
+                // 服务器判定的胜负（成五或走棋超时）；胜方立即发起新开局
+                over = true;
+                if (line.endsWith(myColor == 1 ? "BLACK" : "WHITE")) requestReset();
+            } else if (line.equals("RESUME_FAILED") || line.equals("SESSION_END")) {
+                if (line.equals("RESUME_FAILED")) count("resume_failed");
+                sessionToken = null;
+            } else if (line.startsWith("SYNC:")) {
+                count("sync");
+                applySync(line);
+            } else if (line.startsWith("ACK:")) {
+                if (Integer.parseInt(line.substring(4)) == pendingSeq) {
+                    count("acked");
+                    ackRtt.record(now - pendingAt);
+                    pendingSeq = -1;
+                }
+            } else if (line.startsWith("NACK:")) {
+                count("nack");
+                int seq = Integer.parseInt(line.substring(5));
+                while (model.getMoveCount() > seq) model.undoLast();
+                if (seq == pendingSeq) pendingSeq = -1;
+            } else if (line.startsWith("UNDO:")) {
+                count("undo");
+                int n = Integer.parseInt(line.substring(5));
+                while (model.getMoveCount() > n) model.undoLast();
+                pendingSeq = -1;
+                undoRequested = false;
+                // 撤掉分出胜负的一手后对局继续
+                over = false;
+            } else if (line.startsWith("UNDO_REQUEST:")) {
+                // 棋谱仍停在请求时就同意（带同一步数），由服务器核对后撤步并广播
+                int target = Integer.parseInt(line.substring("UNDO_REQUEST:".length()));
+                send(model.getMoveCount() == target + 1 ? "UNDO_ACCEPT:" + target : "UNDO_DENY");
+            } else if (line.equals("UNDO_DENY") || line.equals("UNDO_STALE")) {
+                if (line.equals("UNDO_STALE")) count("undo_stale");
+                undoRequested = false;
+            } else if (line.equals("RESET_STALE")) {
+                // 对方的重置先到，本方请求作废；随后会收到新局号的 RESET
+                count("reset_stale");
+                resetRequested = false;
+            } else if (line.startsWith("RESET:")) {
+                count("reset");
+                game = Integer.parseInt(line.substring("RESET:".length()));
+                model.reset();
+                pendingSeq = -1;
+                resetRequested = false;
+                over = false;
+            } else if (line.startsWith("MOVE:")) {
+                String body = line.substring(5);
+                int colon = body.indexOf(':');
+                if (colon < 0) return;
+                int seq = Integer.parseInt(body.substring(0, colon));
+                if (seq != model.getMoveCount()) {
+                    count("sync_request");
+                    send("SYNC_REQUEST");
+                    return;
+                }
+                Long t = sentAt.remove(sessionId() + ":" + line.substring(5));
+                if (t != null) moveLatency.record(now - t);
+                String[] p = body.substring(colon + 1).split(",");
+                model.place(Integer.parseInt(p[0]), Integer.parseInt(p[1]), 3 - myColor);
+            }
+        }
+
+        private void applySync(String line) {
+            int sep = line.indexOf(':', 5);
+            int base = Integer.parseInt(line.substring(5, sep));
+            List<Move> tail = Move.parseList(line.substring(sep + 1));
+            while (model.getMoveCount() > base) model.undoLast();
+            for (Move m : tail) model.place(m.x, m.y, m.color);
+            pendingSeq = -1;
+            // 重连后补齐：断线时发出的悔棋、重置请求可能已丢失
+            undoRequested = false;
+            resetRequested = false;
+        }
+
+        private void requestReset() {
+            if (resetRequested) return;
+            resetRequested = true;
+            send("RESET:" + game);
+        }
+
+        private boolean finished() {
+            List<Move> moves = model.getMoves();
+            if (moves.isEmpty()) return false;
+            Move last = moves.get(moves.size() - 1);
+            return model.checkWin(last.x, last.y) || moves.size() == SIZE * SIZE;
+        }
+
+        /** 定时调用：轮到自己且没有未确认的落子时走一步，偶尔请求悔棋或重置。 */
+        synchronized void tick() {
+            if (stopped || out == null || sessionToken == null || myColor == 0) return;
+            if (pendingSeq >= 0 || resetRequested || undoRequested) return;
+            int n = model.getMoveCount();
+            if (over || finished() || (resetEvery > 0 && n >= resetEvery)) {
+                // 由黑方（或胜方在收到 GAME_OVER 时）发起新开局
+                if (myColor == 1) requestReset();
+                return;
+            }
+            if (model.getCurrentTurn() != myColor) return;
+            if (n > 0 && rnd.nextDouble() < undoRate) {
+                undoRequested = true;
+                send("UNDO_REQUEST:" + (n - 1));
+                return;
+            }
+            int x, y;
+            do {
+                x = rnd.nextInt(SIZE);
+                y = rnd.nextInt(SIZE);
+            } while (model.at(x, y) != 0);
+            model.place(x, y, myColor);
+            pendingSeq = n;
+            pendingAt = System.nanoTime();
+            String body = n + ":" + x + "," + y;
+            sentAt.put(sessionId() + ":" + body, pendingAt);
+            send("MOVE:" + body);
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package tools;
+
+import ai.Engine;
+import model.GameModel;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 自我对弈训练数据生成（无界面）：引擎自己对弈，逐步记录局面、搜索分值与最终胜负，用于训练评估权重。
+ *
+ * 每个局面一条 64 字节定长记录（RECORD_BYTES）：
+ * - [0, 57)  棋盘，每格 2 位（0 空 / 1 黑 / 2 白），格子 i = y*15+x 位于第 i/4 字节的第 (i%4)*2 位（与 SessionStore 相同）
+ * - [57]     行棋方（1 黑 / 2 白）
+ * - [58]     终局结果（行棋方视角，有符号）：1 胜、0 和、-1 负
+ * - [59]     已走步数（无符号）
+ * - [60]     搜索给出的最佳着法格子下标（无符号，规范化朝向下）
+ * - [61]     完成的搜索深度
+ * - [62, 64) 搜索分值（行棋方视角，有符号 16 位大端）；必胜/必败记为 ±32767，其余截断到 ±32000
+ * 棋盘与最佳着法按对称规范化：在 8 种旋转/翻转中取 Zobrist 哈希最小的朝向写出，同一局面的各种朝向只保留一条。
+ *
+ * 记录按 -shard 条一个分片写入 out 目录下的 shard-NNNNN.bin.gz（GZIP），写入中的分片名为 .part，写满后改名。
+ * 对局线程与写线程之间是有界队列（-queue 局），写盘跟不上时对局线程阻塞等待，内存占用不随产出增长。
+ * 中断后再次运行即续跑：删除残留的 .part，读回已完成分片重建去重集合，从下一个分片号继续，直到总数达到 -positions。
+ * Ctrl-C 时先停止开新局，写完当前分片再退出。
+ *
+ * 用法: java tools.SelfPlay [-out selfplay] [-positions 1000000] [-depth 3] [-width 10] [-random 4]
+ *       [-shard 1000000] [-threads 核数] [-queue 核数*4] [-seed 1]
+ * -random：开局（中心附近 3 子的均势开局）之后前若干步在前 5 个候选点中随机选择，增加局面多样性。
+ */
+public class SelfPlay {
+    public static final int RECORD_BYTES = 64;
+    private static final int SIZE = GameModel.SIZE;
+    private static final int CELLS = SIZE * SIZE;
+    private static final int STM = 57, RESULT = 58, PLY = 59, BEST = 60, DEPTH = 61, SCORE = 62;
+    private static final byte[] POISON = new byte[0];
+
+    // MAP[t][cell]：第 t 种对称变换下格子 cell 的新下标
+    private static final int[][] MAP = new int[8][CELLS];
+    private static final long[][] ZOBRIST = new long[CELLS][3];
+
+    static {
+        for (int t = 0; t < 8; t++) {
+            for (int y = 0; y < SIZE; y++) {
+                for (int x = 0; x < SIZE; x++) {
+                    int a = x, b = y;
+                    if ((t & 1) != 0) a = SIZE - 1 - a;
+                    if ((t & 2) != 0) b = SIZE - 1 - b;
+                    if ((t & 4) != 0) {
+                        int tmp = a;
+                        a = b;
+                        b = tmp;
+                    }
+                    MAP[t][y * SIZE + x] = b * SIZE + a;
+                }
+            }
+        }
+        Random r = new Random(0x5E1F_9A7L);
+        for (long[] z : ZOBRIST) {
+            z[1] = r.nextLong();
+            z[2] = r.nextLong();
+        }
+    }
+
+    private final Path dir;
+    private final long target;
+    private final int depth, width, randomPlies;
+    private final long shardSize;
+    private final long seed;
+
+    private final SeenSet seen = new SeenSet();
+    private final BlockingQueue<byte[]> queue;
+    private final AtomicLong gameCounter = new AtomicLong();
+    private final LongAdder generated = new LongAdder(), duplicates = new LongAdder(), games = new LongAdder();
+    // written：已写入分片的条数；produced：已交给写线程（含队列中）的条数，达到目标后不再开新局
+    private final AtomicLong written = new AtomicLong(), produced = new AtomicLong();
+    private final LongAdder bytesWritten = new LongAdder();
+    private volatile boolean stop;
+
+    // 续跑时已有的分片
+    private long existingPositions, existingBytes;
+    private int nextShard;
+
+    public SelfPlay(Path dir, long target, int depth, int width, int randomPlies, long shardSize, int queueGames, long seed) {
+        this.dir = dir;
+        this.target = target;
+        this.depth = depth;
+        this.width = width;
+        this.randomPlies = randomPlies;
+        this.shardSize = shardSize;
+        this.queue = new ArrayBlockingQueue<>(queueGames);
+        this.seed = seed;
+    }
+
+    // ---- 对称规范化 ----
+
+    /** 局面在 8 种对称下的哈希中取最小值的变换序号。 */
+    private static int canonical(long[] h) {
+        int best = 0;
+        for (int t = 1; t < 8; t++) {
+            if (Long.compareUnsigned(h[t], h[best]) < 0) best = t;
+        }
+        return best;
+    }
+
+    private static void hashPlace(long[] h, int cell, int color) {
+        for (int t = 0; t < 8; t++) h[t] ^= ZOBRIST[MAP[t][cell]][color];
+    }
+
+    /** 由记录中的（已规范化的）棋盘重新计算规范哈希，用于续跑时重建去重集合。 */
+    static long canonicalHash(byte[] rec, int off) {
+        long[] h = new long[8];
+        for (int i = 0; i < CELLS; i++) {
+            int c = (rec[off + (i >> 2)] >> ((i & 3) * 2)) & 3;
+            if (c != 0) hashPlace(h, i, c);
+        }
+        return h[canonical(h)];
+    }
+
+    // ---- 对局 ----
+
+    private final ThreadLocal<Engine> engines = new ThreadLocal<Engine>() {
+        @Override
+        protected Engine initialValue() {
+            return new Engine(depth, width);
+        }
+    };
+
+    /** 下完一局，返回去重后的记录（每条 RECORD_BYTES 字节）。 */
+    byte[] playGame(long gameIndex) {
+        Engine engine = engines.get();
+        Random rnd = new Random(seed * 0x9E3779B97F4A7C15L + gameIndex);
+        int[][] opening = Tournament.balancedOpenings(1, rnd.nextLong()).get(0);
+        GameModel m = new GameModel();
+        long[] h = new long[8];
+        for (int i = 0; i < opening.length; i++) {
+            int color = i % 2 == 0 ? 1 : 2;
+            m.place(opening[i][0], opening[i][1], color);
+            hashPlace(h, opening[i][1] * SIZE + opening[i][0], color);
+        }
+        List<byte[]> positions = new ArrayList<>();
+        List<Long> hashes = new ArrayList<>();
+        int winner = 0;
+        while (m.getMoveCount() < CELLS) {
+            int color = m.getCurrentTurn();
+            Engine.Result r = engine.search(m, color, 0);
+            if (r == null) break;
+            int t = canonical(h);
+            byte[] rec = new byte[RECORD_BYTES];
+            for (int y = 0; y < SIZE; y++) {
+                for (int x = 0; x < SIZE; x++) {
+                    int c = m.at(x, y);
+                    if (c == 0) continue;
+                    int i = MAP[t][y * SIZE + x];
+                    rec[i >> 2] |= (byte) (c << ((i & 3) * 2));
+                }
+            }
+            rec[STM] = (byte) color;
+            rec[PLY] = (byte) m.getMoveCount();
+            rec[BEST] = (byte) MAP[t][r.y * SIZE + r.x];
+            rec[DEPTH] = (byte) r.depth;
+            int score = Math.abs(r.score) >= Engine.WIN - 100 ? Integer.signum(r.score) * 32767
+                    : Math.max(-32000, Math.min(32000, r.score));
+            rec[SCORE] = (byte) (score >> 8);
+            rec[SCORE + 1] = (byte) score;
+            positions.add(rec);
+            hashes.add(h[t]);
+
+            int x = r.x, y = r.y;
+            if (m.getMoveCount() < opening.length + randomPlies) {
+                List<int[]> cands = engine.candidates(m, color, 5);
+                int[] c = cands.get(rnd.nextInt(cands.size()));
+                x = c[0];
+                y = c[1];
+            }
+            m.place(x, y, color);
+            hashPlace(h, y * SIZE + x, color);
+            if (m.checkWin(x, y)) {
+                winner = color;
+                break;
+            }
+        }
+        games.increment();
+        generated.add(positions.size());
+        ByteArrayOutputStream out = new ByteArrayOutputStream(positions.size() * RECORD_BYTES);
+        for (int i = 0; i < positions.size(); i++) {
+            byte[] rec = positions.get(i);
+            if (!seen.add(hashes.get(i))) {
+                duplicates.increment();
+                continue;
+            }
+            rec[RESULT] = (byte) (winner == 0 ? 0 : winner == rec[STM] ? 1 : -1);
+            out.write(rec, 0, RECORD_BYTES);
+        }
+        return out.toByteArray();
+    }
+
+    // ---- 分片 ----
+
+    private Path shardPath(int index, boolean part) {
+        return dir.resolve(String.format("shard-%05d.bin.gz%s", index, part ? ".part" : ""));
+    }
+
+    /** 续跑：删除未写完的分片，读回已完成分片重建去重集合。 */
+    void recover() throws IOException {
+        Files.createDirectories(dir);
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "shard-*.bin.gz*")) {
+            List<Path> shards = new ArrayList<>();
+            for (Path p : ds) shards.add(p);
+            shards.sort(null);
+            byte[] rec = new byte[RECORD_BYTES];
+            for (Path p : shards) {
+                String name = p.getFileName().toString();
+                if (name.endsWith(".part")) {
+                    System.err.println("removing incomplete shard " + name);
+                    Files.delete(p);
+                    continue;
+                }
+                nextShard = Math.max(nextShard, Integer.parseInt(name.substring(6, 11)) + 1);
+                existingBytes += Files.size(p);
+                try (DataInputStream in = new DataInputStream(new GZIPInputStream(
+                        new BufferedInputStream(Files.newInputStream(p)), 1 << 16))) {
+                    while (true) {
+                        try {
+                            in.readFully(rec);
+                        } catch (EOFException e) {
+                            break;
+                        }
+                        seen.add(canonicalHash(rec, 0));
+                        existingPositions++;
+                    }
+                }
+            }
+        }
+        written.set(existingPositions);
+        produced.set(existingPositions);
+    }
+
+    /** 写线程：从队列取出每局的记录，写满一个分片就关闭并改名。 */
+    private void writeLoop() throws IOException, InterruptedException {
+        OutputStream out = null;
+        CountingStream counter = null;
+        long inShard = 0;
+        while (true) {
+            byte[] batch = queue.take();
+            if (batch == POISON) break;
+            for (int off = 0; off < batch.length; off += RECORD_BYTES) {
+                if (out == null) {
+                    counter = new CountingStream(Files.newOutputStream(shardPath(nextShard, true)));
+                    out = new GZIPOutputStream(new BufferedOutputStream(counter, 1 << 16), 1 << 16);
+                    inShard = 0;
+                }
+                out.write(batch, off, RECORD_BYTES);
+                written.incrementAndGet();
+                if (++inShard == shardSize) {
+                    closeShard(out, counter);
+                    out = null;
+                }
+            }
+        }
+        if (out != null) closeShard(out, counter);
+    }
+
+    private void closeShard(OutputStream out, CountingStream counter) throws IOException {
+        out.close();
+        bytesWritten.add(counter.count);
+        Files.move(shardPath(nextShard, true), shardPath(nextShard, false), StandardCopyOption.ATOMIC_MOVE);
+        nextShard++;
+    }
+
+    private static final class CountingStream extends FilterOutputStream {
+        long count;
+
+        CountingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    public void run(int threads) throws Exception {
+        recover();
+        System.err.printf("resuming with %d positions in %d shards (%d bytes)%n", existingPositions, nextShard, existingBytes);
+        if (existingPositions >= target) return;
+        // 续跑时换一段对局序号，避免重复下出上次的对局
+        gameCounter.set((long) nextShard << 32);
+
+        CountDownLatch finished = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stop = true;
+            try {
+                finished.await(60, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+            }
+        }));
+
+        Thread writer = new Thread(() -> {
+            try {
+                writeLoop();
+            } catch (Exception e) {
+                e.printStackTrace();
+                stop = true;
+                // 写盘失败后不再消费，清空队列让对局线程退出
+                queue.clear();
+            }
+        }, "selfplay-writer");
+        writer.start();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "selfplay");
+            t.setDaemon(true);
+            return t;
+        });
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            pool.execute(() -> {
+                try {
+                    while (!stop && produced.get() < target) {
+                        byte[] batch = playGame(gameCounter.getAndIncrement());
+                        // 队列满时等待写线程；中断时放弃尚未入队的这一局
+                        while (!stop && !queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                        }
+                        if (!stop) produced.addAndGet(batch.length / RECORD_BYTES);
+                    }
+                } catch (InterruptedException ignored) {
+                }
+            });
+        }
+        pool.shutdown();
+        while (!pool.awaitTermination(10, TimeUnit.SECONDS)) progress(start);
+        queue.put(POISON);
+        writer.join();
+        progress(start);
+        long positions = written.get() - existingPositions;
+        long bytes = bytesWritten.sum();
+        System.out.printf("games %d, positions %d new (%d total), duplicates skipped %d%n",
+                games.sum(), positions, written.get(), duplicates.sum());
+        if (positions > 0) {
+            System.out.printf("%.1f positions/sec on %d threads, %.2f bytes/position compressed (%d raw)%n",
+                    positions / ((System.nanoTime() - start) / 1e9), threads, (double) bytes / positions, RECORD_BYTES);
+        }
+        finished.countDown();
+    }
+
+    private void progress(long start) {
+        double secs = (System.nanoTime() - start) / 1e9;
+        long positions = written.get() - existingPositions;
+        System.err.printf("[%.0fs] %d games, %d positions written (%.1f/s), %d duplicates, queue %d%n",
+                secs, games.sum(), positions, positions / secs, duplicates.sum(), queue.size());
+    }
+
+    /**
+     * 规范哈希的去重集合：按哈希高位分成若干段，每段是一个开放寻址的 long 表并各自加锁，
+     * 每个局面约 13 字节（装载因子 0.6），千万级局面也只需百余 MB。
+     */
+    static final class SeenSet {
+        private static final int STRIPES = 64;
+        private final long[][] tables = new long[STRIPES][];
+        private final int[] sizes = new int[STRIPES];
+        // 扩容会替换表数组，锁加在独立的对象上
+        private final Object[] locks = new Object[STRIPES];
+
+        SeenSet() {
+            for (int i = 0; i < STRIPES; i++) {
+                tables[i] = new long[1024];
+                locks[i] = new Object();
+            }
+        }
+
+        /** 加入哈希；已存在时返回 false。 */
+        boolean add(long h) {
+            if (h == 0) h = 1; // 0 表示空槽
+            int s = (int) (h >>> 58);
+            synchronized (locks[s]) {
+                long[] t = tables[s];
+                if (!insert(t, h)) return false;
+                if (++sizes[s] > t.length * 0.6) {
+                    long[] bigger = new long[t.length * 2];
+                    for (long v : t) if (v != 0) insert(bigger, v);
+                    tables[s] = bigger;
+                }
+                return true;
+            }
+        }
+
+        private static boolean insert(long[] t, long h) {
+            int mask = t.length - 1;
+            int i = (int) (h ^ (h >>> 29)) & mask;
+            while (t[i] != 0) {
+                if (t[i] == h) return false;
+                i = (i + 1) & mask;
+            }
+            t[i] = h;
+            return true;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String out = "selfplay";
+        long positions = 1_000_000, shard = 1_000_000, seed = 1;
+        int depth = 3, width = 10, random = 4;
+        int threads = Runtime.getRuntime().availableProcessors(), queueGames = 0;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "-out": out = args[i + 1]; break;
+                case "-positions": positions = Long.parseLong(args[i + 1]); break;
+                case "-depth": depth = Integer.parseInt(args[i + 1]); break;
+                case "-width": width = Integer.parseInt(args[i + 1]); break;
+                case "-random": random = Integer.parseInt(args[i + 1]); break;
+                case "-shard": shard = Long.parseLong(args[i + 1]); break;
+                case "-threads": threads = Integer.parseInt(args[i + 1]); break;
+                case "-queue": queueGames = Integer.parseInt(args[i + 1]); break;
+                case "-seed": seed = Long.parseLong(args[i + 1]); break;
+                default:
+                    System.err.println("未知参数: " + args[i]);
+                    System.exit(1);
+            }
+        }
+        if (queueGames <= 0) queueGames = threads * 4;
+        new SelfPlay(Paths.get(out), positions, depth, width, random, shard, queueGames, seed).run(threads);
+    }
+}
@@ -0,0 +1,241 @@
+package tools;
+
+import controller.TlsClient;
+
+import javax.net.ssl.SSLContext;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TLS 开/关的握手速率与中继吞吐测量（全部在回环地址上）。
+ *
+ * 在进程内启动两个 Server（一个启用 TLS、一个明文，标准输出静默），然后：
+ * 1. 握手：clients 个线程反复“连接 -> TLS 握手 -> 发一行 RESUME（无效令牌）-> 读到 RESUME_FAILED -> 关闭”，
+ *    分别测每个连接新建 SSLContext（完整握手）与共用 SSLContext（会话恢复）两种情况，以及明文连接作对照；
+ *    输出连接/秒，以及服务器握手线程（tls-handshake）每次握手消耗的 CPU 时间。
+ * 2. 中继：各配对两个客户端，一方连续发送 messages 行 MOVE（旧格式，服务器只中继不校验），另一方全部收到为止，
+ *    输出行/秒与 MB/秒。
+ *
+ * 需先运行 scripts/tls-local.sh 生成 out/tls/server.p12 与 out/tls/trust.p12。
+ * 用法: java tools.TlsBench [-keystore out/tls/server.p12] [-truststore out/tls/trust.p12] [-clients 4] [-seconds 5]
+ *       [-messages 200000]
+ */
+public class TlsBench {
+    private static final PrintStream out = System.out;
+
+    public static void main(String[] args) throws Exception {
+        String keystore = "out/tls/server.p12", truststore = "out/tls/trust.p12";
+        int clients = 4, seconds = 5, messages = 200_000;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "-keystore": keystore = args[i + 1]; break;
+                case "-truststore": truststore = args[i + 1]; break;
+                case "-clients": clients = Integer.parseInt(args[i + 1]); break;
+                case "-seconds": seconds = Integer.parseInt(args[i + 1]); break;
+                case "-messages": messages = Integer.parseInt(args[i + 1]); break;
+                default:
+                    System.err.println("未知参数: " + args[i]);
+                    System.exit(1);
+            }
+        }
+        System.setProperty("gomoku.tls.truststore", truststore);
+        // 服务器的连接日志不计入测量
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+
+        System.setProperty("gomoku.tls.keystore", keystore);
+        int tlsPort = startServer("tls");
+        System.clearProperty("gomoku.tls.keystore");
+        int plainPort = startServer("plain");
+
+        out.printf("handshakes (%d clients, %ds each):%n", clients, seconds);
+        handshakes("plain", plainPort, clients, seconds, Mode.PLAIN);
+        handshakes("TLS full", tlsPort, clients, seconds, Mode.FULL);
+        handshakes("TLS resumed", tlsPort, clients, seconds, Mode.RESUMED);
+
+        out.printf("relay (%d MOVE lines):%n", messages);
+        // 先各跑一轮小规模预热 JIT，结果不输出
+        relay(null, plainPort, false, messages / 10);
+        relay(null, tlsPort, true, messages / 10);
+        relay("plain", plainPort, false, messages);
+        relay("TLS", tlsPort, true, messages);
+        System.exit(0);
+    }
+
+    private static int startServer(String node) throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        final int p = port;
+        Thread t = new Thread(() -> {
+            try {
+                new Server.Server(p, 5_000, node, java.util.Collections.emptyMap()).start();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "bench-server-" + port);
+        t.setDaemon(true);
+        t.start();
+        // 等到开始监听（TLS 参数在 start() 中读取，之后才能修改系统属性）
+        for (int i = 0; i < 100; i++) {
+            try (Socket s = new Socket()) {
+                s.connect(new InetSocketAddress("127.0.0.1", port), 100);
+                return port;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IOException("server did not start on port " + port);
+    }
+
+    enum Mode { PLAIN, FULL, RESUMED }
+
+    private static Socket open(int port, Mode mode, SSLContext shared) throws IOException {
+        switch (mode) {
+            case PLAIN: {
+                Socket s = new Socket("localhost", port);
+                s.setTcpNoDelay(true);
+                return s;
+            }
+            case FULL: return TlsClient.connect(TlsClient.newContext(), "localhost", port);
+            default: return TlsClient.connect(shared, "localhost", port);
+        }
+    }
+
+    private static void handshakes(String label, int port, int clients, int seconds, Mode mode) throws Exception {
+        SSLContext shared = TlsClient.newContext();
+        LongAdder done = new LongAdder(), failed = new LongAdder();
+        long cpu0 = handshakeCpu();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            Thread t = new Thread(() -> {
+                while (System.nanoTime() < end) {
+                    try (Socket s = open(port, mode, shared)) {
+                        OutputStream o = s.getOutputStream();
+                        o.write("RESUME:0:0:0\n".getBytes(StandardCharsets.UTF_8));
+                        o.flush();
+                        // 读到应答时，TLS 1.3 的会话票据也已收到，下一次连接才能恢复
+                        BufferedReader r = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+                        if (!"RESUME_FAILED".equals(r.readLine())) throw new IOException("unexpected reply");
+                        done.increment();
+                    } catch (IOException e) {
+                        failed.increment();
+                    }
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) t.join();
+        long cpu = handshakeCpu() - cpu0;
+        long n = done.sum();
+        out.printf("  %-12s %8.0f conn/s", label, n / (double) seconds);
+        if (mode != Mode.PLAIN && n > 0) out.printf(", server handshake CPU %.2f ms/conn", cpu / 1e6 / n);
+        out.printf(", failed %d%n", failed.sum());
+    }
+
+    // 服务器 TLS 握手线程累计的 CPU 时间
+    private static long handshakeCpu() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (ThreadInfo info : bean.getThreadInfo(bean.getAllThreadIds())) {
+            if (info == null || !info.getThreadName().equals("tls-handshake")) continue;
+            long t = bean.getThreadCpuTime(info.getThreadId());
+            if (t > 0) total += t;
+        }
+        return total;
+    }
+
+    private static void relay(String label, int port, boolean tls, int messages) throws Exception {
+        SSLContext ctx = tls ? TlsClient.newContext() : null;
+        Mode mode = tls ? Mode.RESUMED : Mode.PLAIN;
+        Socket a = open(port, mode, ctx), b = open(port, mode, ctx);
+        OutputStream ao = new BufferedOutputStream(a.getOutputStream(), 1 << 16);
+        ao.write("NAME:sender\n".getBytes(StandardCharsets.UTF_8));
+        ao.flush();
+        OutputStream bo = b.getOutputStream();
+        bo.write("NAME:receiver\n".getBytes(StandardCharsets.UTF_8));
+        bo.flush();
+        BufferedReader ar = new BufferedReader(new InputStreamReader(a.getInputStream(), StandardCharsets.UTF_8));
+        BufferedReader br = new BufferedReader(new InputStreamReader(b.getInputStream(), StandardCharsets.UTF_8), 1 << 16);
+        awaitStart(ar);
+        awaitStart(br);
+        // 发送方的读取：应答心跳，丢弃其余消息
+        Thread drain = new Thread(() -> {
+            try {
+                String line;
+                while ((line = ar.readLine()) != null) {
+                    if (line.equals("PING")) {
+                        synchronized (ao) {
+                            ao.write("PONG\n".getBytes(StandardCharsets.UTF_8));
+                            ao.flush();
+                        }
+                    }
+                }
+            } catch (IOException ignored) {
+            }
+        });
+        drain.setDaemon(true);
+        drain.start();
+
+        byte[] line = "MOVE:7,7\n".getBytes(StandardCharsets.UTF_8);
+        long start = System.nanoTime();
+        Thread sender = new Thread(() -> {
+            try {
+                for (int i = 0; i < messages; i++) {
+                    synchronized (ao) {
+                        ao.write(line);
+                    }
+                }
+                synchronized (ao) {
+                    ao.flush();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        sender.start();
+        int received = 0;
+        String l;
+        while (received < messages && (l = br.readLine()) != null) {
+            if (l.startsWith("MOVE:")) received++;
+            else if (l.equals("PING")) {
+                bo.write("PONG\n".getBytes(StandardCharsets.UTF_8));
+                bo.flush();
+            }
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        sender.join();
+        if (label != null) out.printf("  %-12s %10.0f lines/s, %.1f MB/s%s%n", label, received / secs,
+                received * (double) line.length / secs / (1 << 20), received < messages ? " (connection closed early: " + received + ")" : "");
+        a.close();
+        b.close();
+    }
+
+    private static void awaitStart(BufferedReader r) throws IOException {
+        String line;
+        while ((line = r.readLine()) != null) {
+            if (line.startsWith("START:")) return;
+        }
+        throw new EOFException("not paired");
+    }
+}
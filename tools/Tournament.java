@@ -0,0 +1,322 @@
+package tools;
+
+import ai.EnginePlayer;
+import ai.Player;
+import model.GameModel;
+import model.Move;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 引擎对引擎的无界面锦标赛，用于比较两套引擎参数。
+ *
+ * - 开局：随机生成若干个均势开局（中心附近 3 子，静态评估差不超过阈值），每个开局对调颜色各下一局；
+ * - 并发：固定线程池（默认每核一个线程）同时进行多局，每个线程各持有一对棋手实例；
+ * - 时限：每步 tc 毫秒。每步在独立的着法线程上执行，对局线程最多等 tc + margin，超时即判负并中断该步
+ *   （Engine 在轮询节点数时检查中断并放弃搜索）；
+ *   棋手抛出异常或走出非法着法只判该局负，不影响其他对局。超时的棋手实例不再复用（可能仍在计算）；
+ * - 统计：每局结束即更新 A 方的胜/负/和、Elo 估计（95% 区间）与 SPRT 对数似然比，越过边界后不再开始新局；
+ * - 最后输出每小时局数与 CPU 利用率（ThreadMXBean 统计的着法线程 CPU 时间 / 墙钟时间 / 核数）。
+ *
+ * 用法: java tools.Tournament -a depth=4,width=10 -b depth=3,width=10 [-games 200] [-tc 200] [-margin 100]
+ *       [-threads N] [-seed 1] [-elo0 0] [-elo1 20] [-out games.txt]
+ * -out 写出每局棋谱（Move.formatList 格式），可直接交给 tools.BatchAnalysis 分析。
+ */
+public class Tournament {
+    private static final int SIZE = GameModel.SIZE;
+    // 开局静态评估差的上限
+    private static final int BALANCE_LIMIT = 300;
+    // SPRT 的第一/二类错误率
+    private static final double ALPHA = 0.05, BETA = 0.05;
+
+    private final long budgetNanos, marginNanos;
+    private final double elo0, elo1;
+    private final PrintWriter gameLog;
+
+    private final ThreadLocal<Player> playersA, playersB;
+    // 执行 selectMove 的线程：超时的一步无法强行终止，只能中断后放弃，故按需创建、设为守护线程
+    private final ExecutorService movePool = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "tournament-move");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final LongAdder cpuNanos = new LongAdder();
+    private volatile boolean decided;
+
+    // 以下统计均在 this 上同步
+    private int wins, losses, draws, finished;
+    private int crashes, timeouts, illegal, abandoned;
+    // run 返回后调用方会关闭 gameLog；超出等待上限时仍在运行的对局线程不再写入
+    private boolean logClosed;
+
+    public Tournament(Supplier<Player> makeA, Supplier<Player> makeB, long budgetNanos, long marginNanos,
+                      double elo0, double elo1, PrintWriter gameLog) {
+        this.budgetNanos = budgetNanos;
+        this.marginNanos = marginNanos;
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        this.gameLog = gameLog;
+        this.playersA = ThreadLocal.withInitial(makeA);
+        this.playersB = ThreadLocal.withInitial(makeB);
+    }
+
+    /** 单局结果：winner 为 0（和）/1/2，reason 说明结束原因。 */
+    static final class Outcome {
+        final int winner;
+        final String reason;
+        final List<Move> moves;
+        // 超时未返回、仍可能在运行的棋手（该实例不能再用于后续对局）
+        final Player hung;
+
+        Outcome(int winner, String reason, List<Move> moves) {
+            this(winner, reason, moves, null);
+        }
+
+        Outcome(int winner, String reason, List<Move> moves, Player hung) {
+            this.winner = winner;
+            this.reason = reason;
+            this.moves = moves;
+            this.hung = hung;
+        }
+    }
+
+    /** 生成 count 个均势开局（每个为黑白交替的 3 步）。 */
+    public static List<int[][]> balancedOpenings(int count, long seed) {
+        Random rnd = new Random(seed);
+        List<int[][]> out = new ArrayList<>();
+        GameModel m = new GameModel();
+        int c = SIZE / 2;
+        while (out.size() < count) {
+            m.reset();
+            int[][] opening = new int[3][];
+            opening[0] = new int[] {c, c};
+            m.place(c, c, 1);
+            for (int i = 1; i < opening.length; i++) {
+                int x, y;
+                do {
+                    x = c + rnd.nextInt(5) - 2;
+                    y = c + rnd.nextInt(5) - 2;
+                } while (m.at(x, y) != 0);
+                m.place(x, y, i % 2 == 0 ? 1 : 2);
+                opening[i] = new int[] {x, y};
+            }
+            if (Math.abs(m.evaluate(m.getCurrentTurn())) <= BALANCE_LIMIT) out.add(opening);
+        }
+        return out;
+    }
+
+    /** 从 opening 开始下完一局。 */
+    Outcome play(int[][] opening, Player black, Player white) {
+        GameModel m = new GameModel();
+        for (int i = 0; i < opening.length; i++) m.place(opening[i][0], opening[i][1], i % 2 == 0 ? 1 : 2);
+        int color = m.getCurrentTurn();
+        while (true) {
+            if (m.getMoveCount() == SIZE * SIZE) return new Outcome(0, "board full", m.getMoves());
+            Player p = color == 1 ? black : white;
+            final int side = color;
+            // 超时后棋手可能仍在 m 上试走，棋谱以提交前的快照为准
+            List<Move> before = m.getMoves();
+            int[] mv;
+            Future<int[]> f = movePool.submit(() -> {
+                long cpu0 = threadBean.getCurrentThreadCpuTime();
+                try {
+                    return p.selectMove(m, side, budgetNanos);
+                } finally {
+                    long cpu1 = threadBean.getCurrentThreadCpuTime();
+                    if (cpu0 >= 0 && cpu1 >= 0) cpuNanos.add(cpu1 - cpu0);
+                }
+            });
+            try {
+                mv = f.get(budgetNanos + marginNanos, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                f.cancel(true);
+                return new Outcome(3 - color, "time (> " + (budgetNanos + marginNanos) / 1_000_000 + "ms)", before, p);
+            } catch (ExecutionException e) {
+                return new Outcome(3 - color, "crash: " + e.getCause(), before);
+            } catch (InterruptedException e) {
+                f.cancel(true);
+                Thread.currentThread().interrupt();
+                return new Outcome(0, "aborted", before, p);
+            }
+            if (mv == null || !m.place(mv[0], mv[1], color)) return new Outcome(3 - color, "illegal move", m.getMoves());
+            if (m.checkWin(mv[0], mv[1])) return new Outcome(color, "five", m.getMoves());
+            color = 3 - color;
+        }
+    }
+
+    public void run(List<int[][]> openings, int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "tournament-game");
+            t.setDaemon(true);
+            return t;
+        });
+        long start = System.nanoTime();
+        int games = openings.size() * 2;
+        for (int g = 0; g < games; g++) {
+            final int index = g;
+            pool.execute(() -> runGame(index, openings.get(index / 2), index % 2 == 0));
+        }
+        pool.shutdown();
+        // 每步都有时限，整场比赛的时长因此有上界：每线程的局数 x 每局最多步数 x 每步时限，再留一分钟余量
+        long perGame = SIZE * SIZE * (budgetNanos + marginNanos);
+        long bound = ((games + threads - 1) / threads) * perGame + TimeUnit.MINUTES.toNanos(1);
+        if (!pool.awaitTermination(bound, TimeUnit.NANOSECONDS)) {
+            System.err.println("Tournament did not finish within " + bound / 1_000_000_000 + "s, stopping");
+            decided = true;
+            pool.shutdownNow();
+        }
+        movePool.shutdownNow();
+        synchronized (this) { logClosed = true; }
+        report(System.nanoTime() - start, threads);
+    }
+
+    private void runGame(int index, int[][] opening, boolean aBlack) {
+        if (decided) return;
+        Player a = playersA.get(), b = playersB.get();
+        Outcome o;
+        try {
+            o = aBlack ? play(opening, a, b) : play(opening, b, a);
+        } catch (RuntimeException | Error e) {
+            // 对局框架之外的异常同样只影响本局，该局不计分
+            System.err.println("Game " + index + " aborted: " + e);
+            return;
+        }
+        // 超时的棋手可能仍在运行：本线程的下一局换一个新实例
+        if (o.hung == a) playersA.remove();
+        if (o.hung == b) playersB.remove();
+        if ("aborted".equals(o.reason)) return;
+        int aColor = aBlack ? 1 : 2;
+        synchronized (this) {
+            if (o.winner == 0) draws++;
+            else if (o.winner == aColor) wins++;
+            else losses++;
+            finished++;
+            if (o.hung != null) abandoned++;
+            if (o.reason.startsWith("crash")) crashes++;
+            else if (o.reason.startsWith("time")) timeouts++;
+            else if (o.reason.startsWith("illegal")) illegal++;
+            double llr = llr();
+            if (llr >= upperBound() || llr <= lowerBound()) decided = true;
+            System.out.printf("Game %d: %s(%s) vs %s -> %s by %s, %d plies | +%d -%d =%d | Elo %s | LLR %.2f [%.2f, %.2f]%n",
+                    index, a.name(), aBlack ? "black" : "white", b.name(),
+                    o.winner == 0 ? "draw" : o.winner == aColor ? a.name() : b.name(), o.reason, o.moves.size(),
+                    wins, losses, draws, eloString(), llr, lowerBound(), upperBound());
+            if (gameLog != null && !logClosed) gameLog.println(Move.formatList(o.moves));
+        }
+    }
+
+    // ---- 统计（调用方持有 this 锁）----
+
+    private double meanScore() {
+        return (wins + draws * 0.5) / finished;
+    }
+
+    private double variance() {
+        double p = meanScore();
+        return (wins * (1 - p) * (1 - p) + losses * p * p + draws * (0.5 - p) * (0.5 - p)) / finished;
+    }
+
+    private static double eloToScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    private static double scoreToElo(double s) {
+        s = Math.min(Math.max(s, 1e-6), 1 - 1e-6);
+        return -400 * Math.log10(1 / s - 1);
+    }
+
+    private String eloString() {
+        double p = meanScore();
+        double se = Math.sqrt(variance() / finished);
+        double lo = scoreToElo(p - 1.96 * se), hi = scoreToElo(p + 1.96 * se);
+        return String.format("%+.1f [%+.1f, %+.1f]", scoreToElo(p), lo, hi);
+    }
+
+    /** 正态近似下 H1(elo1) 对 H0(elo0) 的对数似然比。 */
+    private double llr() {
+        if (finished < 2) return 0;
+        // 全胜/全负时样本方差为 0，取一个下限避免除零
+        double var = Math.max(variance(), 0.01);
+        double s0 = eloToScore(elo0), s1 = eloToScore(elo1);
+        double sum = wins + draws * 0.5;
+        return (s1 - s0) * (2 * sum - finished * (s0 + s1)) / (2 * var);
+    }
+
+    private static double lowerBound() {
+        return Math.log(BETA / (1 - ALPHA));
+    }
+
+    private static double upperBound() {
+        return Math.log((1 - BETA) / ALPHA);
+    }
+
+    private synchronized void report(long wallNanos, int threads) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        double hours = wallNanos / 3.6e12;
+        System.out.println("==== Tournament finished ====");
+        if (finished == 0) {
+            System.out.println("No games finished.");
+            return;
+        }
+        System.out.printf("Games: %d (+%d -%d =%d), crashes %d, time losses %d, illegal moves %d%n",
+                finished, wins, losses, draws, crashes, timeouts, illegal);
+        if (abandoned > 0) System.out.printf("Abandoned %d timed-out searches (their threads may still be running)%n", abandoned);
+        System.out.printf("Elo (A - B): %s%n", eloString());
+        double llr = llr();
+        String verdict = llr >= upperBound() ? "H1 accepted" : llr <= lowerBound() ? "H0 accepted" : "inconclusive";
+        System.out.printf("SPRT elo0=%.1f elo1=%.1f: LLR %.2f -> %s%n", elo0, elo1, llr, verdict);
+        System.out.printf("Wall %.1fs, %.0f games/hour on %d threads%n", wallNanos / 1e9, finished / hours, threads);
+        if (threadBean.isCurrentThreadCpuTimeSupported()) {
+            System.out.printf("CPU utilization (search threads): %.0f%% of %d cores (%.0f%% of %d game slots)%n",
+                    100.0 * cpuNanos.sum() / ((double) wallNanos * cores), cores,
+                    100.0 * cpuNanos.sum() / ((double) wallNanos * threads), threads);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String specA = "depth=4,width=10", specB = "depth=3,width=10", outPath = null;
+        int games = 200, threads = Runtime.getRuntime().availableProcessors();
+        long tcMillis = 200, marginMillis = 100, seed = 1;
+        double elo0 = 0, elo1 = 20;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "-a": specA = args[i + 1]; break;
+                case "-b": specB = args[i + 1]; break;
+                case "-games": games = Integer.parseInt(args[i + 1]); break;
+                case "-tc": tcMillis = Long.parseLong(args[i + 1]); break;
+                case "-margin": marginMillis = Long.parseLong(args[i + 1]); break;
+                case "-threads": threads = Integer.parseInt(args[i + 1]); break;
+                case "-seed": seed = Long.parseLong(args[i + 1]); break;
+                case "-elo0": elo0 = Double.parseDouble(args[i + 1]); break;
+                case "-elo1": elo1 = Double.parseDouble(args[i + 1]); break;
+                case "-out": outPath = args[i + 1]; break;
+                default:
+                    System.err.println("未知参数: " + args[i]);
+                    System.exit(1);
+            }
+        }
+        final String a = specA, b = specB;
+        PrintWriter log = outPath == null ? null : new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(outPath), StandardCharsets.UTF_8)));
+        System.out.printf("A = %s, B = %s, %d games, %d ms/move, %d threads%n", a, b, games, tcMillis, threads);
+        Tournament t = new Tournament(() -> EnginePlayer.parse("A", a), () -> EnginePlayer.parse("B", b),
+                TimeUnit.MILLISECONDS.toNanos(tcMillis), TimeUnit.MILLISECONDS.toNanos(marginMillis), elo0, elo1, log);
+        t.run(balancedOpenings((games + 1) / 2, seed), threads);
+        if (log != null) log.close();
+    }
+}
@@ -6,6 +6,7 @@ import model.Move;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -32,26 +33,57 @@ public class GameView {
     private JTextField chatInput;
     private JButton undoBtn, replayBtn, resetBtn, sendBtn;
 
-    // 定义回调引用
+    // 定义回调引用（只在 EDT 上读写，setter 经 onEdt 赋值）
     private BoardClickListener boardListener;
     private ChatSendListener chatListener;
     private ControlListener controlListener;
 
+    // 异步创建：界面就绪前对组件的操作先排队，创建完成后在 EDT 上按顺序执行
+    private final List<Runnable> beforeReady = new ArrayList<>();
+    private boolean ready;
+
     public GameView() {
-        // 在构造期间同步在 EDT 上创建 GUI，确保调用者（例如 Controller）在构造后能立即使用 view 的组件
-        try {
-            SwingUtilities.invokeAndWait(this::createAndShowGUI);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to create GUI", e);
+        this(false, null);
+    }
+
+    /**
+     * async 为 false 时在构造期间同步在 EDT 上创建 GUI，构造返回后组件即可使用；
+     * 为 true 时在后台线程初始化 Swing 并创建 GUI，构造立即返回，调用方可同时建立网络连接（主线程不触碰 AWT 工具包）。
+     * onFirstPaint（可为 null）在棋盘第一次绘制后于 EDT 上调用，用于统计启动耗时。
+     */
+    public GameView(boolean async, Runnable onFirstPaint) {
+        Runnable create = () -> createAndShowGUI(onFirstPaint);
+        if (!async) {
+            try {
+                SwingUtilities.invokeAndWait(create);
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to create GUI", e);
+            }
+            return;
+        }
+        Thread t = new Thread(() -> SwingUtilities.invokeLater(create), "view-init");
+        t.start();
+    }
+
+    // 在 EDT 上操作组件；界面尚未创建完成时排队
+    private void onEdt(Runnable r) {
+        synchronized (beforeReady) {
+            if (!ready) {
+                beforeReady.add(r);
+                return;
+            }
         }
+        if (SwingUtilities.isEventDispatchThread()) r.run();
+        else SwingUtilities.invokeLater(r);
     }
 
-    private void createAndShowGUI() {
+    private void createAndShowGUI(Runnable onFirstPaint) {
         frame = new JFrame("网络五子棋（MVC）");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setLayout(new BorderLayout());
 
         boardPanel = new BoardPanel();
+        boardPanel.onFirstPaint = onFirstPaint;
         frame.add(boardPanel, BorderLayout.CENTER);
 
         JPanel right = new JPanel(new BorderLayout());
@@ -83,6 +115,14 @@ public class GameView {
         frame.pack();
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
+
+        List<Runnable> queued;
+        synchronized (beforeReady) {
+            ready = true;
+            queued = new ArrayList<>(beforeReady);
+            beforeReady.clear();
+        }
+        for (Runnable r : queued) r.run();
     }
 
     private void doSendChat() {
@@ -94,28 +134,31 @@ public class GameView {
     }
 
     public void appendChat(String s) {
-        SwingUtilities.invokeLater(() -> {
+        onEdt(() -> {
             chatArea.append(s + "\n");
             chatArea.setCaretPosition(chatArea.getDocument().getLength());
         });
     }
 
     public void setBoardClickListener(BoardClickListener l) {
-        this.boardListener = l;
-        // boardPanel 已在构造中同步创建，不会为 null
-        boardPanel.setBoardClickListener(l);
+        // 异步创建时 boardPanel 可能尚未创建
+        onEdt(() -> {
+            boardListener = l;
+            boardPanel.setBoardClickListener(l);
+        });
     }
 
+    // 按钮与输入框的回调在 EDT 上读取监听器，赋值也放到 EDT 上，避免控制器线程写入后 EDT 看不到
     public void setChatSendListener(ChatSendListener l) {
-        this.chatListener = l;
+        onEdt(() -> chatListener = l);
     }
 
     public void setControlListener(ControlListener l) {
-        this.controlListener = l;
+        onEdt(() -> controlListener = l);
     }
 
     public void updateBoard(GameModel model) {
-        boardPanel.updateFromModel(model);
+        onEdt(() -> boardPanel.updateFromModel(model));
     }
 
     public void showInfo(String msg) {
@@ -129,6 +172,7 @@ public class GameView {
         static final int OFFSET = 20;
         private GameModel model;
         private BoardClickListener listener;
+        private Runnable onFirstPaint;
 
         BoardPanel() {
             setPreferredSize(new Dimension(GameModel.SIZE * CELL + OFFSET * 2, GameModel.SIZE * CELL + OFFSET * 2));
@@ -184,5 +228,15 @@ public class GameView {
                 }
             }
         }
+
+        @Override
+        public void paint(Graphics g) {
+            super.paint(g);
+            Runnable r = onFirstPaint;
+            if (r != null) {
+                onFirstPaint = null;
+                r.run();
+            }
+        }
     }
 }
\ No newline at end of file